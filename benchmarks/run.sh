@@ -0,0 +1,30 @@
+#!/bin/sh
+# Runs the benchmarks and compares the results with baseline.json.
+#
+#   ./run.sh              run and compare with the baseline
+#   ./run.sh --baseline   run and record the results as the new baseline
+#
+# Extra arguments are passed to JMH, e.g. ./run.sh ExpansionBenchmark
+set -e
+cd "$(dirname "$0")"
+
+RECORD=false
+if [ "$1" = "--baseline" ]; then
+    RECORD=true
+    shift
+fi
+
+(cd .. && mvn -B -q install -DskipTests)
+mvn -B -q package
+java -jar target/benchmarks.jar -rf json -rff target/results.json "$@"
+
+if [ "$RECORD" = true ]; then
+    cp target/results.json baseline.json
+    echo "Baseline recorded in baseline.json"
+elif [ -f baseline.json ]; then
+    java -cp target/benchmarks.jar \
+         org.jenkinsci.plugins.jobgenerator.CompareResults \
+         baseline.json target/results.json "${THRESHOLD:-10}"
+else
+    echo "No baseline.json, record one with ./run.sh --baseline"
+fi
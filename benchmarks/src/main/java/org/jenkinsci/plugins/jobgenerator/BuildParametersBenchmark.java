@@ -0,0 +1,141 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.plugins.parameterizedtrigger.AbstractBuildParameterFactory;
+import hudson.plugins.parameterizedtrigger.AbstractBuildParameters;
+import hudson.util.StreamTaskListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.jenkinsci.plugins.jobgenerator.parameterizedtrigger.PredefinedGeneratorParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cartesian product of the parameters of several parameter factories and
+ * parsing of predefined generator parameters.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildParametersBenchmark {
+
+    /**
+     * Number of factories and number of parameters of each factory.
+     */
+    @Param({"2x10", "3x10", "2x100", "4x10"})
+    public String product;
+
+    @Param({"10"})
+    public int properties;
+
+    private List<AbstractBuildParameterFactory> factories;
+    private TaskListener listener;
+    private PredefinedGeneratorParameters predefined;
+    private EnvVars env;
+
+    @Setup
+    public void setUp() {
+        String[] p = this.product.split("x");
+        int count = Integer.parseInt(p[0]);
+        int size = Integer.parseInt(p[1]);
+        this.factories = new ArrayList<AbstractBuildParameterFactory>();
+        for (int i = 0; i < count; i++) {
+            this.factories.add(new FixedFactory(i, size));
+        }
+        this.listener = new StreamTaskListener(new NullOutputStream());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.properties; i++) {
+            sb.append("KEY_").append(i).append("=${VAR_").append(i)
+              .append("}-suffix\n");
+        }
+        this.predefined = new PredefinedGeneratorParameters(sb.toString());
+        this.env = new EnvVars();
+        for (int i = 0; i < this.properties; i++) {
+            this.env.put("VAR_" + i, "value-" + i);
+        }
+    }
+
+    @Benchmark
+    public void cartesianProduct(Blackhole bh) throws Exception {
+        List<List<AbstractBuildParameters>> l =
+            GeneratorRun.getDynamicBuildParameters(null, this.listener,
+                                                   this.factories);
+        // consume every combination as the generation does
+        for (List<AbstractBuildParameters> c : l) {
+            bh.consume(c.size());
+        }
+    }
+
+    @Benchmark
+    public Object predefinedParameters() throws IOException {
+        return this.predefined.getAction(this.env);
+    }
+
+    /**
+     * Factory returning a fixed number of predefined parameters.
+     */
+    private static final class FixedFactory
+                                        extends AbstractBuildParameterFactory {
+        private final List<AbstractBuildParameters> parameters;
+
+        private FixedFactory(int index, int size) {
+            this.parameters = new ArrayList<AbstractBuildParameters>();
+            for (int i = 0; i < size; i++) {
+                this.parameters.add(new PredefinedGeneratorParameters(
+                                            "F" + index + "=" + i + "\n"));
+            }
+        }
+
+        @Override
+        public List<AbstractBuildParameters> getParameters(
+                AbstractBuild<?, ?> build, TaskListener listener) {
+            return this.parameters;
+        }
+    }
+}
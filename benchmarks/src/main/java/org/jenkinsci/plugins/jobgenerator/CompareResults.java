@@ -0,0 +1,116 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares JMH results in JSON format with a baseline.
+ *
+ * Usage: <code>CompareResults baseline.json results.json [threshold]</code>
+ * where threshold is the tolerated slowdown in percent, 10 by default. The
+ * exit code is 1 if at least one benchmark is slower than tolerated.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class CompareResults {
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults baseline.json " +
+                               "results.json [threshold]");
+            System.exit(2);
+        }
+        Map<String, JSONObject> baseline = CompareResults.read(args[0]);
+        Map<String, JSONObject> results = CompareResults.read(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        int regressions = 0;
+        for (Map.Entry<String, JSONObject> e : results.entrySet()) {
+            JSONObject r = e.getValue();
+            double score = r.getJSONObject("primaryMetric").getDouble("score");
+            String unit = r.getJSONObject("primaryMetric")
+                           .getString("scoreUnit");
+            JSONObject b = baseline.get(e.getKey());
+            if (b == null) {
+                System.out.println(String.format("%-90s %12.3f %-8s (new)",
+                                                 e.getKey(), score, unit));
+                continue;
+            }
+            double base = b.getJSONObject("primaryMetric").getDouble("score");
+            double change = base == 0 ? 0 : (score - base) * 100 / base;
+            // in throughput mode a lower score is a slowdown
+            double slowdown = "thrpt".equals(r.optString("mode")) ?
+                                                             -change : change;
+            boolean regression = slowdown > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(String.format("%-90s %12.3f %-8s %+7.1f%%%s",
+                    e.getKey(), score, unit, change,
+                    regression ? " REGRESSION" : ""));
+        }
+        System.out.println(String.format("%d regression(s) above %.1f%%",
+                                         regressions, threshold));
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * @return the results by benchmark name and parameters.
+     */
+    private static Map<String, JSONObject> read(String file)
+            throws IOException {
+        JSONArray a = JSONArray.fromObject(
+                FileUtils.readFileToString(new File(file), "UTF-8"));
+        Map<String, JSONObject> m = new LinkedHashMap<String, JSONObject>();
+        for (Object o : a) {
+            JSONObject r = (JSONObject) o;
+            StringBuilder key = new StringBuilder(r.getString("benchmark"));
+            JSONObject params = r.optJSONObject("params");
+            if (params != null && !params.isNullObject()) {
+                Map<String, String> sorted = new TreeMap<String, String>();
+                for (Iterator<?> i = params.keys(); i.hasNext();) {
+                    String k = (String) i.next();
+                    sorted.put(k, params.getString(k));
+                }
+                key.append(sorted);
+            }
+            m.put(key.toString(), r);
+        }
+        return m;
+    }
+}
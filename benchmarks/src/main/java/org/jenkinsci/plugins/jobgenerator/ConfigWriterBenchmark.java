@@ -0,0 +1,132 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dom4j.Document;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation of a job configuration from templates of 10KB to 5MB, through
+ * the document and the streaming pipelines.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigWriterBenchmark {
+
+    @Param({"10240", "102400", "1048576", "5242880"})
+    public int size;
+
+    @Param({"10"})
+    public int params;
+
+    private File dir;
+    private File config;
+    private GeneratorTemplate template;
+    private ConfigExpander expander;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dir = File.createTempFile("jobgenerator", "bench");
+        this.dir.delete();
+        this.dir.mkdirs();
+        this.config = SyntheticConfig.write(this.dir, this.size, this.params);
+        this.template = GeneratorTemplate.load(this.config);
+        // parse once, as the template cache does
+        this.template.newDocument();
+        Map<String, String> values = SyntheticConfig.values(this.params);
+        this.expander = SyntheticConfig.expander(this.template, values);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(this.dir);
+    }
+
+    /**
+     * Reading and analysing the template, done once per modification of
+     * the job generator.
+     */
+    @Benchmark
+    public GeneratorTemplate loadTemplate() throws IOException {
+        return GeneratorTemplate.load(this.config);
+    }
+
+    /**
+     * Copy of the template document, single visitor pass and serialization.
+     */
+    @Benchmark
+    public void documentPipeline() throws IOException {
+        Document doc = this.template.newDocument();
+        final ConfigExpander e = this.expander;
+        GeneratorVisitor v = new GeneratorVisitor();
+        v.register(new GeneratorVisitor.TextHandler() {
+            public void handle(org.dom4j.Text node) {
+                String text = e.expand(node.getText(),
+                                       node.getParent().getName());
+                if (text != node.getText()) {
+                    node.setText(text);
+                }
+            }
+        });
+        doc.accept(v);
+        XMLWriter writer = new XMLWriter(new NullOutputStream(),
+                                         new OutputFormat());
+        writer.write(doc);
+        writer.flush();
+    }
+
+    @Benchmark
+    public void streamingPipeline() throws IOException {
+        new StreamingConfigWriter(this.template, this.expander, "Job")
+                                            .write(new NullOutputStream());
+    }
+}
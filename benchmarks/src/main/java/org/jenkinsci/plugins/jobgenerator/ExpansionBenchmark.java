@@ -0,0 +1,102 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expansion of generator parameters in texts and job names.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpansionBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int params;
+
+    @Param({"128", "4096", "65536"})
+    public int length;
+
+    private Map<String, String> values;
+    private String text;
+    private CompiledTemplate compiled;
+
+    @Setup
+    public void setUp() {
+        this.values = SyntheticConfig.values(this.params);
+        this.text = SyntheticConfig.text(this.length, this.params);
+        this.compiled = CompiledTemplate.compile(this.text);
+    }
+
+    /**
+     * Expansion of a text seen for the first time.
+     */
+    @Benchmark
+    public String expand() {
+        return GeneratorRun.expand(this.text, this.values);
+    }
+
+    /**
+     * Expansion of a text compiled with the template.
+     */
+    @Benchmark
+    public String renderCompiled() {
+        return this.compiled.render(this.values);
+    }
+
+    @Benchmark
+    public CompiledTemplate compile() {
+        return CompiledTemplate.compile(this.text);
+    }
+
+    /**
+     * Same work as getExpandedJobName which needs a job generator.
+     */
+    @Benchmark
+    public String expandedJobName() {
+        return CompiledTemplate.replaceSpecialChars(
+                GeneratorRun.expand("job-${PARAM_0}-${PARAM_0/-.*/}",
+                                    this.values));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Synthetic job generator configurations used by the benchmarks.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+final class SyntheticConfig {
+
+    private SyntheticConfig() {
+    }
+
+    /**
+     * @return the generator parameter values PARAM_0 to PARAM_(count-1).
+     */
+    static Map<String, String> values(int count) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            values.put("PARAM_" + i, "value-" + i + "/with:special*chars");
+        }
+        return values;
+    }
+
+    /**
+     * @return a text of about the passed length referring to the passed
+     *         number of generator parameters.
+     */
+    static String text(int length, int params) {
+        StringBuilder sb = new StringBuilder(length + 32);
+        int i = 0;
+        while (sb.length() < length) {
+            int p = i % Math.max(params, 1);
+            switch (i % 4) {
+            case 0:
+                sb.append("echo ${PARAM_").append(p).append("}\n");
+                break;
+            case 1:
+                sb.append("cd ${PARAM_").append(p).append("*}\n");
+                break;
+            case 2:
+                sb.append("ls ${PARAM_").append(p).append("/-.*/}\n");
+                break;
+            default:
+                sb.append("make all install # no parameter here\n");
+            }
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a job generator config.xml of about the passed size.
+     */
+    static File write(File dir, int size, int params) throws IOException {
+        StringBuilder sb = new StringBuilder(size + 4096);
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+        sb.append("<org.jenkinsci.plugins.jobgenerator.JobGenerator " +
+                  "plugin=\"jobgenerator@1.22\">\n");
+        sb.append("  <description>Generated for ${PARAM_0}</description>\n");
+        sb.append("  <properties>\n");
+        sb.append("    <hudson.model.ParametersDefinitionProperty>\n");
+        sb.append("      <parameterDefinitions>\n");
+        for (int i = 0; i < params; i++) {
+            sb.append("        <org.jenkinsci.plugins.jobgenerator." +
+                      "parameters.GeneratorKeyValueParameterDefinition>\n");
+            sb.append("          <name>PARAM_").append(i).append("</name>\n");
+            sb.append("          <defaultValue>default</defaultValue>\n");
+            sb.append("        </org.jenkinsci.plugins.jobgenerator." +
+                      "parameters.GeneratorKeyValueParameterDefinition>\n");
+        }
+        sb.append("      </parameterDefinitions>\n");
+        sb.append("    </hudson.model.ParametersDefinitionProperty>\n");
+        sb.append("  </properties>\n");
+        sb.append("  <disabled>false</disabled>\n");
+        sb.append("  <builders>\n");
+        int i = 0;
+        while (sb.length() < size) {
+            sb.append("    <hudson.tasks.Shell>\n");
+            sb.append("      <command>");
+            sb.append(SyntheticConfig.text(256, params).replace("<", "&lt;"));
+            sb.append("</command>\n");
+            sb.append("    </hudson.tasks.Shell>\n");
+            sb.append("    <hudson.plugins.parameterizedtrigger." +
+                      "TriggerBuilder>\n");
+            sb.append("      <configs><hudson.plugins.parameterizedtrigger." +
+                      "BlockableBuildTriggerConfig>\n");
+            sb.append("        <projects>downstream-").append(i % 8)
+              .append("</projects>\n");
+            sb.append("        <triggerWithNoParameters>false" +
+                      "</triggerWithNoParameters>\n");
+            sb.append("      </hudson.plugins.parameterizedtrigger." +
+                      "BlockableBuildTriggerConfig></configs>\n");
+            sb.append("    </hudson.plugins.parameterizedtrigger." +
+                      "TriggerBuilder>\n");
+            i++;
+        }
+        sb.append("  </builders>\n");
+        sb.append("  <publishers/>\n");
+        sb.append("  <generatedJobName>job-${PARAM_0*}</generatedJobName>\n");
+        sb.append("  <generatedDisplayJobName>Job ${PARAM_0}" +
+                  "</generatedDisplayJobName>\n");
+        sb.append("</org.jenkinsci.plugins.jobgenerator.JobGenerator>\n");
+        File f = new File(dir, "config-" + size + ".xml");
+        FileUtils.writeStringToFile(f, sb.toString(), "UTF-8");
+        return f;
+    }
+
+    /**
+     * Expander equivalent to the one of a generation without downstream
+     * generators.
+     */
+    static ConfigExpander expander(final GeneratorTemplate template,
+                                   final Map<String, String> values) {
+        return new ConfigExpander() {
+            public String getForcedText(String element, String parent) {
+                if (element.equals("triggerWithNoParameters")) {
+                    return "true";
+                }
+                else if (element.equals("disabled") &&
+                         "project".equals(parent)) {
+                    return "false";
+                }
+                return null;
+            }
+
+            public String expand(String text, String element) {
+                CompiledTemplate t = template.getCompiledText(text);
+                return t == null ? text : t.render(values);
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.AbortException;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of the cartesian product of lists, combinations are built
+ * on demand from their index instead of being held in memory.
+ *
+ * A combination is made of the prefix followed by one element of each
+ * factor, in factor order, null elements being left out. The first factor
+ * varies the fastest. Empty factors are ignored so that the product of
+ * lists among which some are empty is the product of the other ones, and
+ * the product of no factor is the prefix alone.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class CartesianProduct<E> extends AbstractList<List<E>>
+                                       implements RandomAccess {
+
+    private final List<E> prefix;
+    private final List<List<E>> factors;
+    private final int size;
+
+    private CartesianProduct(List<E> prefix, List<List<E>> factors,
+                             int size) {
+        this.prefix = prefix;
+        this.factors = factors;
+        this.size = size;
+    }
+
+    /**
+     * @param max maximum number of combinations, 0 for no limit other than
+     *        the maximum size of a list
+     * @throws AbortException if the product has more than max combinations
+     */
+    public static <E> CartesianProduct<E> create(
+            List<? extends E> prefix,
+            List<? extends List<? extends E>> factors,
+            int max) throws AbortException {
+        List<List<E>> l = new ArrayList<List<E>>();
+        long size = 1;
+        boolean overflow = false;
+        for(List<? extends E> f: factors){
+            if(f.isEmpty()){
+                continue;
+            }
+            // lazy lists such as the ones of the counter factory are not
+            // copied
+            l.add(f instanceof RandomAccess ?
+                  Collections.<E>unmodifiableList(f) : new ArrayList<E>(f));
+            size *= f.size();
+            if(size > Integer.MAX_VALUE){
+                overflow = true;
+                size = Integer.MAX_VALUE;
+            }
+        }
+        int limit = max > 0 ? max : Integer.MAX_VALUE;
+        if(overflow || size > limit){
+            StringBuilder sizes = new StringBuilder();
+            for(List<E> f: l){
+                if(sizes.length() > 0){
+                    sizes.append(" x ");
+                }
+                sizes.append(f.size());
+            }
+            throw new AbortException(String.format(
+                    "The parameter combinations (%s) exceed the limit of %d " +
+                    "combinations", sizes, limit));
+        }
+        return new CartesianProduct<E>(
+                Collections.unmodifiableList(new ArrayList<E>(prefix)),
+                Collections.unmodifiableList(l), (int) size);
+    }
+
+    /**
+     * @return the non empty factors of this product.
+     */
+    public List<List<E>> getFactors() {
+        return this.factors;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public List<E> get(int index) {
+        if(index < 0 || index >= this.size){
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + this.size);
+        }
+        List<E> c = new ArrayList<E>(this.prefix.size() +
+                                     this.factors.size());
+        c.addAll(this.prefix);
+        for(List<E> f: this.factors){
+            int n = f.size();
+            E e = f.get(index % n);
+            if(e != null){
+                c.add(e);
+            }
+            index /= n;
+        }
+        return c;
+    }
+}
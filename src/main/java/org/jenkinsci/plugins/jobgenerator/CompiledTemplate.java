@@ -0,0 +1,278 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A text tokenized once into literal and generator parameter segments.
+ *
+ * Supported placeholders are:
+ * <ul>
+ * <li><code>${NAME}</code> replaced by the value of NAME,</li>
+ * <li><code>${NAME*}</code> replaced by the value of NAME where special
+ * characters are replaced by an underscore,</li>
+ * <li><code>${NAME/regex/repl}</code> replaced by the value of NAME where
+ * regex matches are replaced by repl.</li>
+ * </ul>
+ * Placeholders referring to unknown parameters are left untouched. Values
+ * containing placeholders are expanded as well.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class CompiledTemplate {
+
+    static final char[] SPECIAL_CHARS = {'\\', '/', ':', '*', '"', '<', '>',
+                                         '|'};
+    // guard against values referring to themselves
+    private static final int MAX_PASSES = 32;
+
+    private final String text;
+    private final Segment[] segments;
+
+    private CompiledTemplate(String text, Segment[] segments) {
+        this.text = text;
+        this.segments = segments;
+    }
+
+    public static CompiledTemplate compile(String s) {
+        List<Segment> segs = new ArrayList<Segment>();
+        int len = s.length();
+        int literal = 0;
+        int i = s.indexOf("${");
+        while (i >= 0) {
+            Segment seg = null;
+            int end = -1;
+            int close = s.indexOf('}', i + 2);
+            int nested = s.indexOf("${", i + 2);
+            int first = s.indexOf('/', i + 2);
+            if (close >= 0 && first >= 0 && first < close) {
+                // the regexp may contain braces, the placeholder ends at the
+                // first closing brace after the slash ending the regexp
+                int second = s.indexOf('/', first + 2);
+                int last = second < 0 ? -1 : s.indexOf('}', second + 1);
+                if (last >= 0 && (nested < 0 || nested > last) &&
+                    s.lastIndexOf('\n', last) < i) {
+                    close = last;
+                }
+            }
+            if (close >= 0 && (nested < 0 || nested > close)) {
+                String body = s.substring(i + 2, close);
+                int slash = body.indexOf('/');
+                if (slash < 0) {
+                    if (body.endsWith("*")) {
+                        seg = new Segment(body.substring(0, body.length() - 1),
+                                          Kind.SPECIAL_CHARS, null, null);
+                    }
+                    else {
+                        seg = new Segment(body, Kind.NORMAL, null, null);
+                    }
+                }
+                else {
+                    // regexp is everything up to the next slash and
+                    // replacement everything up to the closing brace
+                    int slash2 = body.indexOf('/', slash + 2);
+                    if (slash2 > slash + 1 && body.indexOf('\n') < 0) {
+                        seg = Segment.regExp(body.substring(0, slash),
+                                             body.substring(slash + 1, slash2),
+                                             body.substring(slash2 + 1));
+                    }
+                    else {
+                        // a name may contain slashes once nested variables
+                        // have been expanded
+                        seg = new Segment(body, Kind.NORMAL, null, null);
+                    }
+                    seg.fullName = body;
+                }
+                end = close + 1;
+            }
+            if (seg != null && seg.name.length() > 0) {
+                seg.text = s.substring(i, end);
+                if (i > literal) {
+                    segs.add(Segment.literal(s.substring(literal, i)));
+                }
+                segs.add(seg);
+                literal = end;
+                i = s.indexOf("${", end);
+            }
+            else {
+                // not a placeholder, keep scanning from the next candidate
+                i = nested;
+            }
+        }
+        if (literal < len) {
+            segs.add(Segment.literal(s.substring(literal)));
+        }
+        return new CompiledTemplate(s, segs.toArray(new Segment[segs.size()]));
+    }
+
+    /**
+     * @return true if this text contains at least one placeholder.
+     */
+    public boolean hasPlaceholders() {
+        for (Segment seg : this.segments) {
+            if (seg.kind != Kind.LITERAL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * Renders this text with the passed parameter values.
+     */
+    public String render(Map<String, String> values) {
+        return this.render(values, null);
+    }
+
+    /**
+     * Renders this text with the passed parameter values.
+     *
+     * @param replaced if not null, its first element is incremented by the
+     *        number of replaced placeholders
+     */
+    String render(Map<String, String> values, int[] replaced) {
+        StringBuilder sb = new StringBuilder(this.text.length());
+        int n = this.renderTo(sb, values);
+        if (n == 0) {
+            return this.text;
+        }
+        String s = sb.toString();
+        // expand nested variables brought by the values
+        for (int pass = 1; pass < MAX_PASSES && s.contains("${"); pass++) {
+            CompiledTemplate t = CompiledTemplate.compile(s);
+            sb.setLength(0);
+            int m = t.renderTo(sb, values);
+            if (m == 0) {
+                break;
+            }
+            n += m;
+            s = sb.toString();
+        }
+        if (replaced != null) {
+            replaced[0] += n;
+        }
+        return s;
+    }
+
+    /**
+     * @return the number of replaced placeholders.
+     */
+    private int renderTo(StringBuilder sb, Map<String, String> values) {
+        int replaced = 0;
+        for (Segment seg : this.segments) {
+            if (seg.kind == Kind.LITERAL) {
+                sb.append(seg.text);
+                continue;
+            }
+            String v = null;
+            Kind kind = seg.kind;
+            if (seg.fullName != null) {
+                v = values.get(seg.fullName);
+                if (v != null) {
+                    kind = Kind.NORMAL;
+                }
+            }
+            if (v == null) {
+                v = values.get(seg.name);
+            }
+            if (v == null) {
+                sb.append(seg.text);
+                continue;
+            }
+            if (kind == Kind.SPECIAL_CHARS) {
+                v = CompiledTemplate.replaceSpecialChars(v);
+            }
+            else if (kind == Kind.REG_EXP) {
+                if (seg.regexp == null) {
+                    sb.append(seg.text);
+                    continue;
+                }
+                Matcher m = seg.regexp.matcher(v);
+                if (m.find()) {
+                    v = m.replaceAll(seg.replacement);
+                }
+            }
+            sb.append(v);
+            replaced++;
+        }
+        return replaced;
+    }
+
+    public static String replaceSpecialChars(String s) {
+        for (char c : SPECIAL_CHARS) {
+            s = s.replace(c, '_');
+        }
+        return s;
+    }
+
+    private enum Kind {
+        LITERAL, NORMAL, SPECIAL_CHARS, REG_EXP;
+    }
+
+    private static final class Segment {
+        private final String name;
+        private final Kind kind;
+        private final Pattern regexp;
+        private final String replacement;
+        // original text, used as is when the segment cannot be replaced
+        private String text;
+        // whole placeholder content when it contains slashes
+        private String fullName;
+
+        private Segment(String name, Kind kind, Pattern regexp,
+                        String replacement) {
+            this.name = name;
+            this.kind = kind;
+            this.regexp = regexp;
+            this.replacement = replacement;
+        }
+
+        private static Segment literal(String text) {
+            Segment seg = new Segment(null, Kind.LITERAL, null, null);
+            seg.text = text;
+            return seg;
+        }
+
+        private static Segment regExp(String name, String regexp,
+                                      String replacement) {
+            Pattern p = null;
+            try {
+                p = Pattern.compile(regexp);
+            } catch (PatternSyntaxException e) {
+            }
+            return new Segment(name, Kind.REG_EXP, p, replacement);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.util.ByteBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Digest of the configuration last written to a generated job.
+ *
+ * The digest is stored in the directory of the generated job along with
+ * the size and the modification time of its config.xml, a configuration
+ * modified by someone else than the Job Generator is then always rewritten.
+ * The fingerprint of what the configuration has been generated from is
+ * stored as well, so an incremental generation knows without generating the
+ * configuration again that it would not change.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GeneratedJobDigest {
+
+    private static final Logger LOGGER = Logger.getLogger(
+                                           GeneratedJobDigest.class.getName());
+    private static final String FILE_NAME = "jobgenerator-digest.xml";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String digest;
+    // null for the digests recorded before fingerprints were introduced
+    private final String fingerprint;
+    private final long configLastModified;
+    private final long configLength;
+
+    private GeneratedJobDigest(String digest, String fingerprint,
+                               File config) {
+        this.digest = digest;
+        this.fingerprint = fingerprint;
+        this.configLastModified = config.lastModified();
+        this.configLength = config.length();
+    }
+
+    private static MessageDigest getMD5() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 is not supported", e);
+        }
+    }
+
+    /**
+     * @return the hexadecimal MD5 digest of the canonical form of the passed
+     *         configuration. The XML declaration, the order of the
+     *         attributes, the escaping and the whitespace between elements
+     *         do not change the digest, so configurations rendered by the
+     *         document and the streaming writers have the same digest.
+     */
+    public static String compute(ByteBuffer config) throws IOException {
+        Fingerprint f = new Fingerprint();
+        try {
+            XMLStreamReader r = GeneratorTemplate.createXMLStreamReader(
+                                                     config.newInputStream());
+            StringBuilder text = new StringBuilder();
+            while(r.hasNext()){
+                int event = r.next();
+                if(event == XMLStreamConstants.CHARACTERS ||
+                   event == XMLStreamConstants.SPACE ||
+                   event == XMLStreamConstants.CDATA){
+                    text.append(r.getText());
+                    continue;
+                }
+                if(text.length() > 0){
+                    if(text.toString().trim().length() > 0){
+                        f.add("#" + text);
+                    }
+                    text.setLength(0);
+                }
+                switch(event){
+                case XMLStreamConstants.START_ELEMENT:
+                    f.add("<" + r.getLocalName());
+                    Map<String, String> attributes =
+                                               new TreeMap<String, String>();
+                    for(int i = 0; i < r.getAttributeCount(); i++){
+                        attributes.put(r.getAttributeLocalName(i),
+                                       r.getAttributeValue(i));
+                    }
+                    for(Entry<String, String> e: attributes.entrySet()){
+                        f.add("@" + e.getKey());
+                        f.add(e.getValue());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    f.add(">");
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    f.add("!" + r.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    f.add("?" + r.getPITarget());
+                    f.add(r.getPIData());
+                    break;
+                default:
+                    break;
+                }
+            }
+            r.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read the generated " +
+                                  "configuration", e);
+        }
+        return f.get();
+    }
+
+    /**
+     * @return the hexadecimal MD5 digest of the passed inputs of a
+     *         generation.
+     */
+    public static String fingerprint(List<String> inputs) throws IOException {
+        Fingerprint f = new Fingerprint();
+        for(String s: inputs){
+            f.add(s);
+        }
+        return f.get();
+    }
+
+    /**
+     * Fingerprint computed as its inputs are known, equal to the one
+     * returned by {@link GeneratedJobDigest#fingerprint} for the same inputs.
+     */
+    public static final class Fingerprint {
+        private final MessageDigest md = GeneratedJobDigest.getMD5();
+
+        public Fingerprint() throws IOException {
+        }
+
+        public void add(String s) {
+            this.md.update(String.valueOf(s).getBytes(UTF_8));
+            // separator which cannot be part of the inputs
+            this.md.update((byte) 0xff);
+        }
+
+        public String get() {
+            return Util.toHexString(this.md.digest());
+        }
+    }
+
+    /**
+     * @return true if the configuration of the job in the passed directory
+     *         has been written by the Job Generator with the passed digest
+     *         and has not been modified since.
+     */
+    public static boolean isUpToDate(File jobDir, String digest) {
+        GeneratedJobDigest d = GeneratedJobDigest.read(jobDir);
+        return d != null && digest.equals(d.digest) && d.isUnmodified(jobDir);
+    }
+
+    /**
+     * @return true if the configuration of the job in the passed directory
+     *         has been generated from inputs with the passed fingerprint and
+     *         has not been modified since.
+     */
+    public static boolean isFingerprintUpToDate(File jobDir,
+                                                String fingerprint) {
+        GeneratedJobDigest d = GeneratedJobDigest.read(jobDir);
+        return d != null && fingerprint.equals(d.fingerprint) &&
+               d.isUnmodified(jobDir);
+    }
+
+    private boolean isUnmodified(File jobDir) {
+        File config = new File(jobDir, "config.xml");
+        return config.lastModified() == this.configLastModified &&
+               config.length() == this.configLength;
+    }
+
+    private static GeneratedJobDigest read(File jobDir) {
+        XmlFile f = GeneratedJobDigest.getFile(jobDir);
+        if(!f.exists()){
+            return null;
+        }
+        try {
+            return (GeneratedJobDigest) f.read();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read " + f, e);
+        } catch (ClassCastException e) {
+            LOGGER.log(Level.WARNING, "Unexpected content in " + f, e);
+        }
+        return null;
+    }
+
+    /**
+     * Records the digest and the fingerprint of the configuration just
+     * written to the job in the passed directory.
+     */
+    public static void save(File jobDir, String digest, String fingerprint)
+            throws IOException {
+        GeneratedJobDigest d = new GeneratedJobDigest(digest, fingerprint,
+                                       new File(jobDir, "config.xml"));
+        GeneratedJobDigest.getFile(jobDir).write(d);
+    }
+
+    private static XmlFile getFile(File jobDir) {
+        return new XmlFile(new File(jobDir, FILE_NAME));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.XmlFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Jobs generated by a job generator with the generator parameters used to
+ * generate them.
+ *
+ * The index is stored in the directory of the job generator and is updated
+ * by each generation, so the generated jobs can be found without loading
+ * the build records. Jobs are ordered from the least to the most recently
+ * generated.
+ *
+ * Jobs generated by the downstream generators of a run also record the job
+ * generated by the initiating job generator, their origin, so that the jobs
+ * an origin no longer generates can be found.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GeneratedJobsIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(
+                                           GeneratedJobsIndex.class.getName());
+    private static final String FILE_NAME = "jobgenerator-index.xml";
+
+    private final JobGenerator owner;
+    private final LinkedHashMap<String, Entry> jobs;
+    private final boolean persisted;
+    private boolean dirty = false;
+    // most recently generated job, computed again when null
+    private String last;
+
+    private static final class Entry {
+        private final Map<String, String> values;
+        private final String origin;
+
+        private Entry(Map<String, String> values, String origin) {
+            this.values = values;
+            this.origin = origin;
+        }
+    }
+
+    private GeneratedJobsIndex(JobGenerator owner,
+                               LinkedHashMap<String, Entry> jobs,
+                               boolean persisted) {
+        this.owner = owner;
+        this.jobs = jobs;
+        this.persisted = persisted;
+    }
+
+    @SuppressWarnings("unchecked")
+    static GeneratedJobsIndex load(JobGenerator owner) {
+        XmlFile f = GeneratedJobsIndex.getFile(owner);
+        if(f.exists()){
+            try {
+                LinkedHashMap<String, Entry> jobs =
+                                          new LinkedHashMap<String, Entry>();
+                for(Map.Entry<String, Object> e:
+                        ((Map<String, Object>) f.read()).entrySet()){
+                    jobs.put(e.getKey(), (Entry) e.getValue());
+                }
+                return new GeneratedJobsIndex(owner, jobs, true);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to read " + f, e);
+            } catch (ClassCastException e) {
+                LOGGER.log(Level.WARNING, "Unexpected content in " + f, e);
+            }
+        }
+        return new GeneratedJobsIndex(owner,
+                                      new LinkedHashMap<String, Entry>(),
+                                      false);
+    }
+
+    private static XmlFile getFile(JobGenerator owner) {
+        return new XmlFile(new File(owner.getRootDir(), FILE_NAME));
+    }
+
+    /**
+     * @return false if the generated jobs have never been indexed, i.e. the
+     *         job generator has not been run since the index exists.
+     */
+    public synchronized boolean isIndexed() {
+        return this.persisted || !this.jobs.isEmpty();
+    }
+
+    /**
+     * Records a generated job as the most recently generated one.
+     *
+     * @param origin job generated by the initiating job generator of the
+     *        run, null if the job is generated by the initiating job
+     *        generator itself
+     */
+    public synchronized void record(String job, Map<String, String> values,
+                                    String origin) {
+        Entry e = this.jobs.get(job);
+        if(e != null && values.equals(e.values) &&
+           (origin == null ? e.origin == null : origin.equals(e.origin)) &&
+           job.equals(this.getLast())){
+            return;
+        }
+        this.jobs.remove(job);
+        this.jobs.put(job, new Entry(
+                          new LinkedHashMap<String, String>(values), origin));
+        this.last = job;
+        this.dirty = true;
+    }
+
+    public synchronized void remove(String job) {
+        if(this.jobs.remove(job) != null){
+            if(job.equals(this.last)){
+                this.last = null;
+            }
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * @return the parameters used to generate the passed job or null if the
+     *         job has not been generated by this job generator.
+     */
+    public synchronized Map<String, String> get(String job) {
+        Entry e = this.jobs.get(job);
+        return e == null ? null : Collections.unmodifiableMap(e.values);
+    }
+
+    /**
+     * @return the jobs generated for the passed origin.
+     */
+    public synchronized List<String> getJobs(String origin) {
+        List<String> l = new ArrayList<String>();
+        for(Map.Entry<String, Entry> e: this.jobs.entrySet()){
+            if(origin.equals(e.getValue().origin)){
+                l.add(e.getKey());
+            }
+        }
+        return l;
+    }
+
+    /**
+     * @return the generated jobs from the most to the least recently
+     *         generated.
+     */
+    public synchronized List<String> getJobs() {
+        List<String> l = new ArrayList<String>(this.jobs.keySet());
+        Collections.reverse(l);
+        return l;
+    }
+
+    private String getLast() {
+        if(this.last == null){
+            for(String job: this.jobs.keySet()){
+                this.last = job;
+            }
+        }
+        return this.last;
+    }
+
+    /**
+     * Writes the index if it has been modified.
+     */
+    public synchronized void save() {
+        if(!this.dirty){
+            return;
+        }
+        XmlFile f = GeneratedJobsIndex.getFile(this.owner);
+        try {
+            f.write(this.jobs);
+            this.dirty = false;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to write " + f, e);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.model.BuildListener;
+import hudson.model.Cause;
+import hudson.model.ParametersAction;
+import hudson.model.Result;
+import hudson.plugins.parameterizedtrigger.BlockableBuildTriggerConfig;
+import hudson.plugins.parameterizedtrigger.TriggerBuilder;
+import hudson.security.ACL;
+import hudson.tasks.BuildStep;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.jenkinsci.plugins.conditionalbuildstep.singlestep.SingleConditionalBuilder;
+import org.jenkinsci.plugins.jobgenerator.GeneratorRun.DownstreamGenerator;
+import org.jenkinsci.plugins.jobgenerator.actions.DownstreamGenerationBuildAction;
+import org.jenkinsci.plugins.jobgenerator.actions.GeneratedJobBuildAction;
+
+/**
+ * Generates the jobs of the downstream job generators within the run of the
+ * initiating job generator instead of scheduling one build per generated job.
+ *
+ * The downstream tree is processed level by level: the jobs of a level are
+ * generated concurrently on a shared worker pool and the next level starts
+ * once they are all written, so a job is always generated after the job
+ * referring to it. The parameter combinations of a level are submitted in
+ * chunks of bounded size so that large products are never materialized as a
+ * whole. Downstream generators computing their parameters with
+ * parameter factories are scheduled as regular builds since the factories
+ * need their own build, except when planning.
+ *
+ * Generations mostly wait for the file system, when the Java runtime
+ * supports virtual threads the workers can be virtual threads so that many
+ * more jobs are written concurrently than there are platform workers.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GenerationEngine {
+
+    private static final Logger LOGGER = Logger.getLogger(
+                                             GenerationEngine.class.getName());
+
+    public static boolean ENABLED = Boolean.getBoolean(
+                                 GenerationEngine.class.getName() + ".enabled");
+    public static int WORKERS = Integer.getInteger(
+                               GenerationEngine.class.getName() + ".workers",
+                               Runtime.getRuntime().availableProcessors());
+    /**
+     * Set the org.jenkinsci.plugins.jobgenerator.GenerationEngine.virtualThreads
+     * system property to generate the jobs on virtual threads when the Java
+     * runtime supports them, {@link #WORKERS} platform threads are used
+     * otherwise.
+     */
+    public static boolean VIRTUAL_THREADS = Boolean.getBoolean(
+                          GenerationEngine.class.getName() + ".virtualThreads");
+    /**
+     * Maximum number of jobs generated at the same time on virtual threads,
+     * set with the
+     * org.jenkinsci.plugins.jobgenerator.GenerationEngine.virtualThreadsLimit
+     * system property.
+     */
+    public static int VIRTUAL_THREADS_LIMIT = Integer.getInteger(
+                     GenerationEngine.class.getName() + ".virtualThreadsLimit",
+                     256);
+    /**
+     * Maximum number of jobs submitted at once to the workers, set with the
+     * org.jenkinsci.plugins.jobgenerator.GenerationEngine.chunkSize system
+     * property.
+     */
+    public static int CHUNK_SIZE = Integer.getInteger(
+                     GenerationEngine.class.getName() + ".chunkSize", 1024);
+
+    private static ExecutorService executor;
+    // bounds the generations running on virtual threads, null otherwise
+    private static Semaphore permits;
+
+    private final GeneratorRun build;
+    private final BuildListener listener;
+    private final EnvVars environment;
+    private final Authentication authentication;
+    private final List<String> jobs =
+                         Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> scheduled =
+                         Collections.synchronizedList(new ArrayList<String>());
+
+    public GenerationEngine(GeneratorRun build, BuildListener listener)
+            throws IOException, InterruptedException {
+        this.build = build;
+        this.listener = listener;
+        this.environment = GeneratorEnvironment.of(build, listener).getVars();
+        // workers act on behalf of the initiating build
+        this.authentication = Jenkins.getAuthentication();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if(executor == null && VIRTUAL_THREADS){
+            executor = GenerationEngine.newVirtualThreadExecutor();
+            if(executor != null){
+                permits = new Semaphore(Math.max(1, VIRTUAL_THREADS_LIMIT));
+                LOGGER.info("Jobs are generated on virtual threads");
+            }
+        }
+        if(executor == null){
+            ThreadPoolExecutor e = new ThreadPoolExecutor(
+                    WORKERS, WORKERS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "Job Generator worker #" +
+                                                     count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            e.allowCoreThreadTimeOut(true);
+            executor = e;
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    static synchronized void shutdown() {
+        if(executor != null){
+            executor.shutdown();
+            executor = null;
+            permits = null;
+        }
+    }
+
+    private static synchronized Semaphore getPermits() {
+        return permits;
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task or null if the
+     *         Java runtime does not support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // looked up at runtime, the plugin targets older runtimes
+            return (ExecutorService) Executors.class.getMethod(
+                            "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            LOGGER.info("Virtual threads are not supported by this Java " +
+                        "runtime, using " + WORKERS + " worker threads");
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to create virtual threads", e);
+        }
+        return null;
+    }
+
+    /**
+     * Generates the jobs of the passed downstream generators and of their
+     * own downstream generators.
+     *
+     * @return FAILURE if at least one job could not be generated.
+     */
+    public Result generate(List<DownstreamGenerator> downstream)
+            throws InterruptedException {
+        int failures = 0;
+        int size = Math.max(1, CHUNK_SIZE);
+        List<DownstreamGenerator> level = downstream;
+        while(!level.isEmpty()){
+            List<DownstreamGenerator> next =
+                                        new ArrayList<DownstreamGenerator>();
+            Iterator<Task> tasks = new TaskIterator(level);
+            while(tasks.hasNext()){
+                List<Task> chunk = new ArrayList<Task>();
+                while(chunk.size() < size && tasks.hasNext()){
+                    chunk.add(tasks.next());
+                }
+                failures += this.run(chunk, next);
+            }
+            level = next;
+        }
+        // a plan has not generated anything the deletion could rely on
+        if(!this.build.isPlanning()){
+            this.build.addAction(new DownstreamGenerationBuildAction(
+                        new ArrayList<String>(this.jobs),
+                        new ArrayList<String>(this.scheduled), failures));
+        }
+        LOGGER.fine(String.format("%d job(s) generated by the downstream " +
+                                  "generators of %s", this.jobs.size(),
+                                  this.build.getFullDisplayName()));
+        return failures > 0 ? Result.FAILURE : Result.SUCCESS;
+    }
+
+    /**
+     * Runs the passed tasks and adds the downstream generators of the
+     * generated jobs to next.
+     *
+     * @return the number of jobs which could not be generated.
+     */
+    private int run(List<Task> tasks, List<DownstreamGenerator> next)
+            throws InterruptedException {
+        int failures = 0;
+        List<Future<List<DownstreamGenerator>>> results =
+                                                getExecutor().invokeAll(tasks);
+        for(int i = 0; i < results.size(); i++){
+            try {
+                next.addAll(results.get(i).get());
+            } catch (ExecutionException e) {
+                failures += 1;
+                Throwable cause = e.getCause();
+                String job = tasks.get(i).job.getName();
+                if(cause instanceof AbortException){
+                    this.listener.error(job + ": " + cause.getMessage());
+                }
+                else{
+                    cause.printStackTrace(this.listener.error(
+                                       "Unable to generate job of " + job));
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return true if the downstream generators of the passed job generator
+     *         are computed with parameter factories.
+     */
+    private static boolean hasParameterFactories(JobGenerator job) {
+        List<TriggerBuilder> tbl = job.getBuildersList().getAll(
+                                                         TriggerBuilder.class);
+        for(SingleConditionalBuilder scb: job.getBuildersList().getAll(
+                                              SingleConditionalBuilder.class)){
+            BuildStep bs = scb.getBuildStep();
+            if(TriggerBuilder.class.isInstance(bs)){
+                tbl.add((TriggerBuilder) bs);
+            }
+        }
+        for(TriggerBuilder tb: tbl){
+            for(BlockableBuildTriggerConfig c: tb.getConfigs()){
+                if(c.getConfigFactories() != null &&
+                   !c.getConfigFactories().isEmpty()){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks the parameter combinations of the job generators of a level,
+     * creating their tasks on demand.
+     */
+    private final class TaskIterator implements Iterator<Task> {
+        private final Iterator<DownstreamGenerator> downstream;
+        private JobGenerator job;
+        private Iterator<List<ParametersAction>> params =
+                   Collections.<List<ParametersAction>>emptyList().iterator();
+
+        private TaskIterator(List<DownstreamGenerator> downstream) {
+            this.downstream = downstream.iterator();
+        }
+
+        public boolean hasNext() {
+            while(!this.params.hasNext() && this.downstream.hasNext()){
+                DownstreamGenerator dg = this.downstream.next();
+                if(JobGenerator.class.isInstance(dg.getJob())){
+                    this.job = (JobGenerator) dg.getJob();
+                    this.params = dg.getImportParams().iterator();
+                }
+            }
+            return this.params.hasNext();
+        }
+
+        public Task next() {
+            if(!this.hasNext()){
+                throw new NoSuchElementException();
+            }
+            return new Task(this.job, this.params.next());
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Generates the job of a downstream generator for one set of parameters
+     * and returns its own downstream generators.
+     */
+    private final class Task implements Callable<List<DownstreamGenerator>> {
+        private final JobGenerator job;
+        private final List<ParametersAction> params;
+
+        private Task(JobGenerator job, List<ParametersAction> params) {
+            this.job = job;
+            this.params = params;
+        }
+
+        public List<DownstreamGenerator> call() throws Exception {
+            Semaphore p = GenerationEngine.getPermits();
+            if(p != null){
+                p.acquire();
+            }
+            SecurityContext old = ACL.impersonate(
+                                         GenerationEngine.this.authentication);
+            try {
+                return this.generate();
+            } finally {
+                SecurityContextHolder.setContext(old);
+                if(p != null){
+                    p.release();
+                }
+            }
+        }
+
+        private List<DownstreamGenerator> generate() throws Exception {
+            GeneratorRun run = GenerationEngine.this.build;
+            BuildListener listener = GenerationEngine.this.listener;
+            // a plan evaluates the parameter factories within the initiating
+            // build since it must not trigger anything
+            if(!run.isPlanning() && hasParameterFactories(this.job)){
+                Cause.UpstreamCause cause = new Cause.UpstreamCause(run);
+                this.job.scheduleBuild2(0, cause, this.params);
+                GenerationEngine.this.scheduled.add(this.job.getName());
+                return Collections.emptyList();
+            }
+            String error = run.checkParameters(this.job, this.params);
+            if(error != null){
+                throw new AbortException(error);
+            }
+            // environment the build of this job generator would have
+            EnvVars env = run.getEnvironment(GenerationEngine.this.environment,
+                                             this.job, this.params);
+            List<DownstreamGenerator> downstream =
+                run.gatherDownstreamGenerators(this.job, this.params, env,
+                                               listener);
+            GeneratedJobBuildAction a = run.generate(this.job, this.params,
+                                                     downstream, listener);
+            if(a == null){
+                throw new AbortException("Unable to create the directory " +
+                          "of job " + GeneratorRun.getExpandedJobName(
+                                                     this.job, this.params));
+            }
+            GenerationEngine.this.jobs.add(a.getJob());
+            return downstream;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time spent in each generation phase and work done by the generations of
+ * one run, including the generations done by the generation engine on
+ * behalf of the run.
+ *
+ * Every measure is also recorded in the plugin wide {@link GenerationStats}.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GenerationMetrics {
+
+    public enum Phase {
+        /** gathering of the downstream job generators */
+        DOWNSTREAM,
+        /** copy of the pre-analysed template document */
+        TEMPLATE,
+        /**
+         * expansion of the generator parameters, streamed generations are
+         * serialized at the same time
+         */
+        EXPAND,
+        /** evaluation of the run conditions of conditional steps */
+        CONDITIONS,
+        /** serialization of the generated document */
+        SERIALIZE,
+        /** digest of the generated configuration */
+        DIGEST,
+        /** creation or update of the generated job */
+        SAVE;
+
+        public String getDisplayName() {
+            return this.name().toLowerCase();
+        }
+    }
+
+    public enum Counter {
+        JOBS,
+        BYTES_PARSED,
+        NODES_VISITED,
+        PLACEHOLDERS_REPLACED,
+        CONDITIONS_EVALUATED;
+
+        public String getDisplayName() {
+            return this.name().toLowerCase().replace('_', ' ');
+        }
+    }
+
+    private final AtomicLongArray nanos =
+                              new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray counters =
+                              new AtomicLongArray(Counter.values().length);
+
+    /**
+     * @return the start time of a phase to pass to
+     *         {@link #stop(Phase, long)}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(Phase phase, long start) {
+        long d = System.nanoTime() - start;
+        this.nanos.addAndGet(phase.ordinal(), d);
+        GenerationStats.get().record(phase, d);
+    }
+
+    public void add(Counter counter, long n) {
+        if(n == 0){
+            return;
+        }
+        this.counters.addAndGet(counter.ordinal(), n);
+        GenerationStats.get().add(counter, n);
+    }
+
+    public long getNanos(Phase phase) {
+        return this.nanos.get(phase.ordinal());
+    }
+
+    public long getCount(Counter counter) {
+        return this.counters.get(counter.ordinal());
+    }
+
+    /**
+     * @return the nanoseconds spent by phase name, in generation order.
+     */
+    public Map<String, Long> getDurations() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for(Phase p: Phase.values()){
+            m.put(p.getDisplayName(), this.getNanos(p));
+        }
+        return m;
+    }
+
+    /**
+     * @return the counters by name.
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> m = new LinkedHashMap<String, Long>();
+        for(Counter c: Counter.values()){
+            m.put(c.getDisplayName(), this.getCount(c));
+        }
+        return m;
+    }
+}
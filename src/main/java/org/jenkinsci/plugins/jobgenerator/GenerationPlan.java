@@ -0,0 +1,103 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jenkinsci.plugins.jobgenerator.actions.GeneratedJobBuildAction;
+import org.jenkinsci.plugins.jobgenerator.actions.GenerationPlanBuildAction;
+
+/**
+ * Changes a generation would make to the generated jobs.
+ *
+ * Each decision is written to the plan artifact of the run as soon as it is
+ * taken, one <code>CHANGE&lt;tab&gt;job</code> line per job, so only the
+ * counts are kept in memory.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GenerationPlan {
+
+    public static final String ARTIFACT = "jobgenerator-plan.txt";
+
+    public enum Change {
+        NEW, CHANGED, UNCHANGED, TO_DELETE;
+
+        static Change of(GeneratedJobBuildAction.Outcome outcome) {
+            switch(outcome){
+            case CREATED:
+                return NEW;
+            case UPDATED:
+                return CHANGED;
+            default:
+                return UNCHANGED;
+            }
+        }
+    }
+
+    private final Writer writer;
+    private final int[] counts = new int[Change.values().length];
+
+    GenerationPlan(File artifactsDir) throws IOException {
+        if(!artifactsDir.exists() && !artifactsDir.mkdirs()){
+            throw new IOException("Unable to create " + artifactsDir);
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(artifactsDir, ARTIFACT)),
+                "UTF-8"));
+    }
+
+    public synchronized void add(Change change, String job)
+            throws IOException {
+        this.counts[change.ordinal()]++;
+        this.writer.write(change.name());
+        this.writer.write('\t');
+        this.writer.write(job);
+        this.writer.write('\n');
+    }
+
+    public synchronized int getCount(Change change) {
+        return this.counts[change.ordinal()];
+    }
+
+    public synchronized void close() throws IOException {
+        this.writer.close();
+    }
+
+    public synchronized GenerationPlanBuildAction toAction() {
+        Map<String, Integer> m = new LinkedHashMap<String, Integer>();
+        for(Change c: Change.values()){
+            m.put(c.name(), this.counts[c.ordinal()]);
+        }
+        return new GenerationPlanBuildAction(m, ARTIFACT);
+    }
+}
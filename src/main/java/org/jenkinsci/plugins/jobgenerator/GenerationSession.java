@@ -0,0 +1,234 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Cause;
+import hudson.model.Item;
+import hudson.model.Items;
+import hudson.model.TopLevelItem;
+import hudson.util.AtomicFileWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import jenkins.model.Jenkins;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Changes made to the item tree by a generation.
+ *
+ * Creating or updating a job through the Jenkins API rebuilds the
+ * dependency graph each time, which costs as much as the number of jobs.
+ * Within a session the jobs are written and loaded as Jenkins does it but
+ * the dependency graph is rebuilt once, when the session is committed. The
+ * generated jobs to run are scheduled after that so their builds trigger
+ * the right downstream projects.
+ *
+ * Since it writes and loads the jobs itself instead of relying on the
+ * Jenkins API, a session has to be enabled explicitly. Item listeners are
+ * notified of created jobs as Jenkins does it, updated jobs are not
+ * reported to them.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GenerationSession {
+
+    private static final Logger LOGGER = Logger.getLogger(
+                                            GenerationSession.class.getName());
+
+    /**
+     * Set the org.jenkinsci.plugins.jobgenerator.GenerationSession.enabled
+     * system property to rebuild the dependency graph once per generation,
+     * jobs are created and updated through the Jenkins API otherwise.
+     */
+    public static boolean ENABLED = Boolean.getBoolean(
+                             GenerationSession.class.getName() + ".enabled");
+
+    // names of the jobs being created by any session
+    private static final Set<String> CREATING = new HashSet<String>();
+
+    private final List<AbstractProject> toRun =
+                                           new ArrayList<AbstractProject>();
+    private boolean modified = false;
+
+    /**
+     * Creates a job in the passed directory from the passed configuration.
+     *
+     * @throws IllegalArgumentException if a job with the same name exists
+     *         or is being created, like Jenkins does
+     */
+    public AbstractProject create(String name, File dir, InputStream config)
+            throws IOException {
+        Jenkins jenkins = Jenkins.getInstance();
+        if(!ENABLED){
+            return (AbstractProject) jenkins.createProjectFromXML(name,
+                                                                  config);
+        }
+        jenkins.checkPermission(Item.CREATE);
+        Jenkins.checkGoodName(name);
+        jenkins.getProjectNamingStrategy().checkName(name);
+        GenerationSession.reserve(jenkins, name);
+        try {
+            File configXml = Items.getConfigFile(dir).getFile();
+            OutputStream out = new FileOutputStream(configXml);
+            try {
+                IOUtils.copy(config, out);
+            } finally {
+                out.close();
+            }
+            TopLevelItem item = (TopLevelItem) Items.load(jenkins, dir);
+            // putItem replaces an existing job, the name must still be free
+            synchronized(jenkins){
+                GenerationSession.checkFree(jenkins, name);
+                try {
+                    jenkins.putItem(item);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while adding job " +
+                                          name, e);
+                }
+            }
+            this.setModified();
+            return (AbstractProject) item;
+        } finally {
+            synchronized(CREATING){
+                CREATING.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Prevents other creations of the passed job until it is created, its
+     * directory is shared by all of them.
+     */
+    private static void reserve(Jenkins jenkins, String name) {
+        synchronized(CREATING){
+            if(!CREATING.add(name)){
+                throw new IllegalArgumentException("Job " + name +
+                                                   " is already being created");
+            }
+        }
+        try {
+            GenerationSession.checkFree(jenkins, name);
+        } catch (IllegalArgumentException e) {
+            synchronized(CREATING){
+                CREATING.remove(name);
+            }
+            throw e;
+        }
+    }
+
+    private static void checkFree(Jenkins jenkins, String name) {
+        if(jenkins.getItem(name) != null){
+            throw new IllegalArgumentException(jenkins.getDisplayName() +
+                    " already contains an item '" + name + "'");
+        }
+    }
+
+    /**
+     * Replaces the configuration of the passed job.
+     */
+    public void update(AbstractProject item, InputStream config)
+            throws IOException {
+        if(!ENABLED){
+            item.updateByXml(new StreamSource(config));
+            return;
+        }
+        item.checkPermission(Item.CONFIGURE);
+        AtomicFileWriter out = new AtomicFileWriter(
+                                    item.getConfigFile().getFile(), "UTF-8");
+        try {
+            try {
+                TransformerFactory.newInstance().newTransformer().transform(
+                        new StreamSource(config), new StreamResult(out));
+                out.close();
+            } catch (TransformerException e) {
+                throw new IOException("Unable to write the configuration " +
+                                      "of job " + item.getName(), e);
+            }
+            // reload the job from the new configuration before committing it
+            new XmlFile(Items.XSTREAM, out.getTemporaryFile()).unmarshal(item);
+            item.onLoad(item.getParent(), item.getRootDir().getName());
+            out.commit();
+        } finally {
+            out.abort();
+        }
+        this.setModified();
+    }
+
+    /**
+     * Schedules a build of the passed job once the session is committed.
+     */
+    public void run(AbstractProject item) {
+        if(!ENABLED){
+            item.scheduleBuild(5, new Cause.UserIdCause());
+            return;
+        }
+        synchronized(this){
+            this.toRun.add(item);
+        }
+    }
+
+    private synchronized void setModified() {
+        this.modified = true;
+    }
+
+    /**
+     * Rebuilds the dependency graph if a job has been created or updated
+     * and schedules the builds of the jobs to run.
+     */
+    public void commit() {
+        List<AbstractProject> l;
+        boolean rebuild;
+        synchronized(this){
+            l = new ArrayList<AbstractProject>(this.toRun);
+            rebuild = this.modified;
+            this.toRun.clear();
+            this.modified = false;
+        }
+        if(rebuild){
+            Jenkins.getInstance().rebuildDependencyGraph();
+            LOGGER.fine("Rebuilt the dependency graph");
+        }
+        for(AbstractProject p: l){
+            p.scheduleBuild(5, new Cause.UserIdCause());
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.jenkinsci.plugins.jobgenerator.GenerationMetrics.Counter;
+import org.jenkinsci.plugins.jobgenerator.GenerationMetrics.Phase;
+
+/**
+ * Plugin wide generation statistics published as JMX MBeans.
+ *
+ * <ul>
+ * <li><code>org.jenkinsci.plugins.jobgenerator:type=GenerationStats</code>
+ * holds the counters,</li>
+ * <li><code>org.jenkinsci.plugins.jobgenerator:type=GenerationPhase,
+ * name=&lt;phase&gt;</code> holds the duration histogram of a phase.</li>
+ * </ul>
+ * Histograms use power of two buckets of microseconds, percentiles are the
+ * upper bound of the bucket they fall in.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GenerationStats {
+
+    private static final Logger LOGGER = Logger.getLogger(
+                                              GenerationStats.class.getName());
+    private static final String DOMAIN = "org.jenkinsci.plugins.jobgenerator";
+    private static final GenerationStats INSTANCE = new GenerationStats();
+
+    public interface CountersMBean {
+        long getJobs();
+        long getBytesParsed();
+        long getNodesVisited();
+        long getPlaceholdersReplaced();
+        long getConditionsEvaluated();
+        void reset();
+    }
+
+    public interface HistogramMBean {
+        long getCount();
+        double getTotalMillis();
+        double getMeanMillis();
+        double getMaxMillis();
+        double get50thPercentileMillis();
+        double get95thPercentileMillis();
+        double get99thPercentileMillis();
+        void reset();
+    }
+
+    private final Counters counters = new Counters();
+    private final Histogram[] histograms;
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    private GenerationStats() {
+        this.histograms = new Histogram[Phase.values().length];
+        for(int i = 0; i < this.histograms.length; i++){
+            this.histograms[i] = new Histogram();
+        }
+    }
+
+    public static GenerationStats get() {
+        return INSTANCE;
+    }
+
+    void record(Phase phase, long nanos) {
+        this.histograms[phase.ordinal()].record(nanos);
+    }
+
+    void add(Counter counter, long n) {
+        this.counters.values.addAndGet(counter.ordinal(), n);
+    }
+
+    public CountersMBean getCounters() {
+        return this.counters;
+    }
+
+    public HistogramMBean getHistogram(Phase phase) {
+        return this.histograms[phase.ordinal()];
+    }
+
+    /**
+     * Registers the MBeans in the platform MBean server.
+     */
+    synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            this.register(server,
+                          new ObjectName(DOMAIN + ":type=GenerationStats"),
+                          new StandardMBean(this.counters,
+                                            CountersMBean.class));
+            for(Phase p: Phase.values()){
+                this.register(server,
+                        new ObjectName(DOMAIN + ":type=GenerationPhase,name=" +
+                                       p.getDisplayName()),
+                        new StandardMBean(this.histograms[p.ordinal()],
+                                          HistogramMBean.class));
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Unable to register generation MBeans",
+                       e);
+        }
+    }
+
+    private void register(MBeanServer server, ObjectName name,
+                          StandardMBean mbean) throws JMException {
+        if(server.isRegistered(name)){
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+        this.registered.add(name);
+    }
+
+    synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for(ObjectName name: this.registered){
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                LOGGER.log(Level.FINE, "Unable to unregister " + name, e);
+            }
+        }
+        this.registered.clear();
+    }
+
+    private static final class Counters implements CountersMBean {
+        private final AtomicLongArray values =
+                                  new AtomicLongArray(Counter.values().length);
+
+        private long get(Counter c) {
+            return this.values.get(c.ordinal());
+        }
+
+        public long getJobs() {
+            return this.get(Counter.JOBS);
+        }
+
+        public long getBytesParsed() {
+            return this.get(Counter.BYTES_PARSED);
+        }
+
+        public long getNodesVisited() {
+            return this.get(Counter.NODES_VISITED);
+        }
+
+        public long getPlaceholdersReplaced() {
+            return this.get(Counter.PLACEHOLDERS_REPLACED);
+        }
+
+        public long getConditionsEvaluated() {
+            return this.get(Counter.CONDITIONS_EVALUATED);
+        }
+
+        public void reset() {
+            for(int i = 0; i < this.values.length(); i++){
+                this.values.set(i, 0);
+            }
+        }
+    }
+
+    private static final class Histogram implements HistogramMBean {
+        // bucket i counts the durations below 2^i microseconds
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLongArray totals = new AtomicLongArray(3);
+        private static final int COUNT = 0;
+        private static final int TOTAL = 1;
+        private static final int MAX = 2;
+
+        private void record(long nanos) {
+            long micros = Math.max(nanos / 1000, 0);
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            this.buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            this.totals.incrementAndGet(COUNT);
+            this.totals.addAndGet(TOTAL, nanos);
+            long max = this.totals.get(MAX);
+            while(nanos > max && !this.totals.compareAndSet(MAX, max, nanos)){
+                max = this.totals.get(MAX);
+            }
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1000000d;
+        }
+
+        public long getCount() {
+            return this.totals.get(COUNT);
+        }
+
+        public double getTotalMillis() {
+            return Histogram.millis(this.totals.get(TOTAL));
+        }
+
+        public double getMeanMillis() {
+            long count = this.getCount();
+            return count == 0 ? 0 : this.getTotalMillis() / count;
+        }
+
+        public double getMaxMillis() {
+            return Histogram.millis(this.totals.get(MAX));
+        }
+
+        public double get50thPercentileMillis() {
+            return this.getPercentileMillis(0.5);
+        }
+
+        public double get95thPercentileMillis() {
+            return this.getPercentileMillis(0.95);
+        }
+
+        public double get99thPercentileMillis() {
+            return this.getPercentileMillis(0.99);
+        }
+
+        private double getPercentileMillis(double p) {
+            long count = 0;
+            for(int i = 0; i < BUCKETS; i++){
+                count += this.buckets.get(i);
+            }
+            long rank = (long) Math.ceil(count * p);
+            long seen = 0;
+            for(int i = 0; i < BUCKETS; i++){
+                seen += this.buckets.get(i);
+                if(seen >= rank && seen > 0){
+                    // upper bound of the bucket, never above the maximum
+                    return Math.min((1L << i) / 1000d, this.getMaxMillis());
+                }
+            }
+            return 0;
+        }
+
+        public void reset() {
+            for(int i = 0; i < BUCKETS; i++){
+                this.buckets.set(i, 0);
+            }
+            for(int i = 0; i < this.totals.length(); i++){
+                this.totals.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+
+/**
+ * Environment of a job generator build, captured once per build.
+ *
+ * Computing the environment of a build asks the node and every environment
+ * contributor again, the generator parameter classes get it from here
+ * instead of once per parameter block or per combination.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GeneratorEnvironment {
+
+    private final EnvVars vars;
+
+    private GeneratorEnvironment(EnvVars vars) {
+        this.vars = vars;
+    }
+
+    static GeneratorEnvironment capture(AbstractBuild<?, ?> build,
+                                        TaskListener listener)
+            throws IOException, InterruptedException {
+        return new GeneratorEnvironment(build.getEnvironment(listener));
+    }
+
+    /**
+     * @return the environment made of the passed variables, which must not
+     *         be modified afterwards.
+     */
+    static GeneratorEnvironment wrap(EnvVars vars) {
+        return new GeneratorEnvironment(vars);
+    }
+
+    /**
+     * @return the environment captured by the passed build if it is a job
+     *         generator build, the environment of the build otherwise.
+     */
+    public static GeneratorEnvironment of(AbstractBuild<?, ?> build,
+                                          TaskListener listener)
+            throws IOException, InterruptedException {
+        if(build instanceof GeneratorRun){
+            return ((GeneratorRun) build).getGeneratorEnvironment(listener);
+        }
+        return GeneratorEnvironment.capture(build, listener);
+    }
+
+    /**
+     * @return the variables of the environment, shared by all the users of
+     *         the environment so they must not be modified.
+     */
+    public EnvVars getVars() {
+        return this.vars;
+    }
+
+    /**
+     * @return a copy of the variables which can be freely modified.
+     */
+    public EnvVars newVars() {
+        return new EnvVars(this.vars);
+    }
+
+    public String get(String name) {
+        return this.vars.get(name);
+    }
+
+    /**
+     * @return the passed text where the variables of the environment are
+     *         replaced.
+     */
+    public String expand(String s) {
+        return this.vars.expand(s);
+    }
+}
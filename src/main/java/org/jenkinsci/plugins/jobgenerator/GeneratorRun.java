@@ -24,18 +24,19 @@ THE SOFTWARE.
 
 package org.jenkinsci.plugins.jobgenerator;
 
-import hudson.Util;
+import hudson.AbortException;
+import hudson.EnvVars;
 import hudson.model.Build;
 import hudson.model.BuildListener;
 import hudson.model.ParameterValue;
 import hudson.model.Result;
 import hudson.model.TopLevelItem;
 import hudson.model.AbstractBuild;
-import hudson.model.AbstractItem;
 import hudson.model.AbstractProject;
 import hudson.model.Cause;
 import hudson.model.ParametersAction;
 import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.plugins.parameterizedtrigger.AbstractBuildParameterFactory;
 import hudson.plugins.parameterizedtrigger.AbstractBuildParameters;
 import hudson.plugins.parameterizedtrigger.AbstractBuildParameters.DontTriggerException;
@@ -44,48 +45,44 @@ import hudson.plugins.parameterizedtrigger.BuildTrigger;
 import hudson.plugins.parameterizedtrigger.BuildTriggerConfig;
 import hudson.plugins.parameterizedtrigger.TriggerBuilder;
 import hudson.tasks.BuildStep;
-import hudson.util.XStream2;
+import hudson.util.ByteBuffer;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Properties;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.xml.transform.stream.StreamSource;
 
 import jenkins.model.Jenkins;
 
-import org.apache.tools.ant.filters.StringInputStream;
 import org.dom4j.Document;
 import org.dom4j.Element;
-import org.dom4j.Node;
 import org.dom4j.Text;
-import org.dom4j.Visitor;
 import org.dom4j.VisitorSupport;
-import org.dom4j.io.SAXReader;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
 
-import org.jenkins_ci.plugins.run_condition.RunCondition;
 import org.jenkinsci.plugins.conditionalbuildstep.singlestep.SingleConditionalBuilder;
 import org.jenkinsci.plugins.jobgenerator.actions.*;
+import org.jenkinsci.plugins.jobgenerator.parameterizedtrigger.PredefinedGeneratorParameters;
 import org.jenkinsci.plugins.jobgenerator.parameters.*;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 
 /**
  * Generates a configured job by copying this job config.xml and replacing
@@ -98,26 +95,105 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
 
     private static final Logger LOGGER = Logger.getLogger(
                                                  GeneratorRun.class.getName());
-    private static final char[] specialChars = {'\\', '/', ':', '*', '"', '<',
-                                                '>', '|'};
-    private List<DownstreamGenerator> downstreamGenerators =
+    /**
+     * Maximum number of invocations of a downstream project computed by
+     * parameter factories, set the
+     * org.jenkinsci.plugins.jobgenerator.GeneratorRun.maxCombinations system
+     * property to limit it. 0 means no limit.
+     */
+    public static int MAX_COMBINATIONS = Integer.getInteger(
+                        GeneratorRun.class.getName() + ".maxCombinations", 0);
+    // fan-out plan of the run, only summarized in the build record
+    private transient List<DownstreamGenerator> downstreamGenerators =
                                          new ArrayList<DownstreamGenerator>();
-    private enum ReplaceType{
-        NORMAL, SPECIAL_CHARS, REG_EXP;
+    // indexes of generated jobs modified by this build
+    private transient Set<GeneratedJobsIndex> indexes =
+                  Collections.synchronizedSet(new HashSet<GeneratedJobsIndex>());
+    private transient GenerationMetrics metrics = new GenerationMetrics();
+    // jobs are written within a session committed at the end of the run
+    private transient GenerationSession session = new GenerationSession();
+    // job generated by the initiating job generator once it is generated
+    private transient String origin;
+    // jobs generated by this run by job generator
+    private transient Map<JobGenerator, Set<String>> generatedJobs =
+                                     new HashMap<JobGenerator, Set<String>>();
+    // decisions of an incremental generation
+    private transient List<String> regeneratedJobs =
+                         Collections.synchronizedList(new ArrayList<String>());
+    private transient List<String> skippedJobs =
+                         Collections.synchronizedList(new ArrayList<String>());
+    // environment of this run, captured when the run starts
+    private transient GeneratorEnvironment environment;
+    // environment of the parameter set whose downstream generators are
+    // being gathered by the current thread, if it is not the one of the run
+    private final transient ThreadLocal<GeneratorEnvironment> current =
+                                      new ThreadLocal<GeneratorEnvironment>();
+    // changes reported instead of being applied, null if jobs are written
+    private transient GenerationPlan plan;
+    // downstream projects of the jobs generated by the run itself
+    private transient DownstreamSummary summary = new DownstreamSummary();
+    // batch generated by this run, its options take precedence over the
+    // ones of the job generators
+    private transient GeneratorBatchAction batch;
+
+    /**
+     * Downstream projects triggered by a run, recorded as the jobs referring
+     * to them are generated.
+     */
+    private static final class DownstreamSummary {
+        private final Map<String, Integer> invocations =
+                                         new LinkedHashMap<String, Integer>();
+        private int total = 0;
+        private GeneratedJobDigest.Fingerprint names;
+
+        private void add(List<DownstreamGenerator> downstream,
+                         List<String> names) throws IOException {
+            if(this.names == null){
+                this.names = new GeneratedJobDigest.Fingerprint();
+            }
+            for(DownstreamGenerator dg: downstream){
+                String name = dg.job.getName();
+                int n = dg.importParams.size();
+                Integer count = this.invocations.get(name);
+                this.invocations.put(name, count == null ? n : count + n);
+                this.total += n;
+            }
+            for(String name: names){
+                this.names.add(name);
+            }
+        }
+
+        private boolean isEmpty() {
+            return this.invocations.isEmpty();
+        }
+
+        private DownstreamSummaryBuildAction toAction() {
+            return new DownstreamSummaryBuildAction(this.invocations,
+                                           this.total, this.names.get());
+        }
     }
-    private static final ReplaceType[] replaceTypes = ReplaceType.values();
-    
-    private class DownstreamGenerator{
+
+    /**
+     * Downstream job generator with the parameters of each of its
+     * invocations.
+     */
+    static final class DownstreamGenerator{
         private final AbstractProject job;
         private final List<List<ParametersAction>> importParams;
-        private boolean processed;
 
         public DownstreamGenerator(AbstractProject job,
                 List<List<ParametersAction>> params){
            this.job = job;
            this.importParams = params;
-           this.processed = false;
        }
+
+        public AbstractProject getJob(){
+            return this.job;
+        }
+
+        public List<List<ParametersAction>> getImportParams(){
+            return this.importParams;
+        }
     }
 
     public GeneratorRun(JobGenerator job, File buildDir)
@@ -133,93 +209,61 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
         return project;
     }
 
+    /**
+     * @return the metrics of the generations done by this run.
+     */
+    GenerationMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return true if this run only reports the changes a generation would
+     *         make to the generated jobs.
+     */
+    boolean isPlanning() {
+        return this.plan != null;
+    }
+
     public static String expand(String s, List<ParametersAction> params) {
-        // check existenz of variables to replace
+        return GeneratorRun.expand(s, GeneratorRun.getValues(params));
+    }
+
+    public static String expand(String s, Map<String, String> values) {
+        if (s == null || !s.contains("${")) {
+            return s;
+        }
+        return CompiledTemplate.compile(s).render(values);
+    }
+
+    /**
+     * @return the generator parameter values by name, the first action
+     *         defining a parameter takes precedence.
+     */
+    public static Map<String, String> getValues(
+            List<ParametersAction> params) {
+        Map<String, String> values = new HashMap<String, String>();
         for (ParametersAction p : params) {
-            List<ParameterValue> values = p.getParameters();
-            ParameterValue value = null;
-            ReplaceType replType = ReplaceType.NORMAL;
-            for (ParameterValue v : values) {
-                String decorated = "${" + v.getName() + "}";
-                if (s.contains(decorated)) {
-                    value = v;
-                    break;
-                }
-                decorated =  "${" + v.getName() + "*}";
-                if (s.contains(decorated)) {
-                    replType = ReplaceType.SPECIAL_CHARS;
-                    value = v;
-                    break;
-                }
-                Pattern pattern = Pattern.compile(
-                        ".*?\\$\\{" + v.getName() + "/(.*?)/(.*?)\\}.*");
-                Matcher matcher = pattern.matcher(s);
-                if (matcher.find()) {
-                    replType = ReplaceType.REG_EXP;
-                    value = v;
-                    break;
-                }
-            }
-            if (value != null){
-                s = GeneratorRun.expand(
-                        s, value.getName(),
-                        ((GeneratorKeyValueParameterValue) value).value,
-                        replType);
-                // replace nested variables
-                s = expand(s, params);
-            }
-        }
-        return s;
-    }
-
-    private static String expand(String s, String n, String v, ReplaceType r){
-        if(r == ReplaceType.NORMAL) {
-            String decorated = "${" + n + "}";
-            while (s.contains(decorated)) {
-                s = s.replace(decorated, v);
-            }
-        }
-        else if(r == ReplaceType.SPECIAL_CHARS) {
-            for(char c: GeneratorRun.specialChars){
-                v = v.replace(c, '_');
-            }
-            String decorated = "${" + n + "*}";
-            while (s.contains(decorated)) {
-                s = s.replace(decorated, v);
-            }
-        }
-        else if (r == ReplaceType.REG_EXP){
-            // fetch regexps and expression to replace in s
-            Pattern pattern = Pattern.compile(
-                    ".*?\\$\\{" + n + "/(.+?)/(.*?)\\}.*");
-            Matcher regexps = pattern.matcher(s);
-            if (regexps.find()){
-                pattern = Pattern.compile(
-                        ".*?(\\$\\{" + n + "/.*?/.*?\\}).*");
-                Matcher toReplace = pattern.matcher(s);
-                if (toReplace.find()) {
-                    // apply regexp replacement to value v 
-                    pattern = Pattern.compile(regexps.group(1));
-                    Matcher vmatcher = pattern.matcher(v);
-                    if (vmatcher.find()) {
-                        v = vmatcher.replaceAll(regexps.group(2));
-                    }
-                    // finally replace the whole expression by the new value
-                    s = s.replace(toReplace.group(1), v);
+            for (ParameterValue v : p.getParameters()) {
+                if (GeneratorKeyValueParameterValue.class.isInstance(v) &&
+                    !values.containsKey(v.getName())) {
+                    values.put(v.getName(),
+                               ((GeneratorKeyValueParameterValue) v).value);
                 }
             }
         }
-        return s;
+        return values;
     }
 
     public static String getExpandedJobName(JobGenerator p,
                                             List<ParametersAction> params){
-        String n = expand(p.getGeneratedJobName(), params);
+        return getExpandedJobName(p, getValues(params));
+    }
+
+    public static String getExpandedJobName(JobGenerator p,
+                                            Map<String, String> values){
+        String n = expand(p.getGeneratedJobName(), values);
         // force replacement of special characters
-        for(char c: GeneratorRun.specialChars){
-            n = n.replace(c, '_');
-        }
-        return n;
+        return CompiledTemplate.replaceSpecialChars(n);
     }
 
     public static boolean allParametersAreResolved(Element root){
@@ -284,372 +328,1042 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
         this.execute(new GeneratorImpl());
     }
 
-    protected class GeneratorImpl extends AbstractBuildExecution {
+    /**
+     * Generates the job of the passed job generator.
+     *
+     * @param downstream downstream generators used to update the project
+     *        references of the generated job
+     * @return the summary of the generated job or null if the job directory
+     *         cannot be created. When planning nothing is written and the
+     *         outcome is the one a generation would have.
+     */
+    GeneratedJobBuildAction generate(JobGenerator job,
+                                     List<ParametersAction> params,
+                                     List<DownstreamGenerator> downstream,
+                                     BuildListener listener)
+            throws IOException, InterruptedException {
+        return this.generate(job, params, downstream, null, listener);
+    }
 
-        public GeneratorImpl() {
+    /**
+     * @param summary if not null, the downstream generators are added to it
+     */
+    private GeneratedJobBuildAction generate(
+            JobGenerator job,
+            List<ParametersAction> params,
+            List<DownstreamGenerator> downstream,
+            DownstreamSummary summary,
+            BuildListener listener)
+            throws IOException, InterruptedException {
+        String expName = getExpandedJobName(job, params);
+        String expDispName = expand(job.getGeneratedDisplayJobName(), params);
+        File d = new File(job.getRootDir() +
+                          File.separator + ".." + File.separator +
+                          expName);
+        if (this.plan == null && !d.exists() && !d.mkdir()) {
+            return null;
         }
-
-        protected Result doRun(BuildListener listener) throws Exception {
-            // TODO syl20bnr: This function is a big mess. I plan to
-            // refactor it for testing purpose.
-            if(!this.checkParameters(listener)){
-                return Result.FAILURE;
-            }
-            JobGenerator job = getJobGenerator();
-            this.gatherDownstreamGenerators(listener);
-            List<ParametersAction> params = getBuild().getActions(
-                                          hudson.model.ParametersAction.class);
-            String expName = getExpandedJobName(job, params);
-            if(job.getDelete()){
-                List<String> jobs = new ArrayList<String>();
-                this.deleteJobs(job, !job.getProcessThisJobOnly(), jobs);
-                // save deleted job name
-                DeletedJobBuildAction action = new DeletedJobBuildAction(jobs);
-                getBuild().addAction(action);
-            }
-            else{
-                String expDispName = expand(
-                        job.getGeneratedDisplayJobName(), params);
-                File d = new File(job.getRootDir() +
-                                  File.separator + ".." + File.separator +
-                                  expName);
-                if (!d.exists() && !d.mkdir()) {
-                    return Result.FAILURE;
-                }
-                SAXReader reader = new SAXReader();
-                Document doc = reader.read(
-                                  job.getConfigFile().getFile());
-                // Update root element
-                Element root = doc.getRootElement();
-                root.setName("project");
-                root.remove(root.attribute("plugin"));
-                // Update Display Name
-                Node dispName = doc.selectSingleNode("//displayName");
-                if(!expDispName.isEmpty()){
-                    if(dispName != null){
-                        dispName.setText(expDispName);
-                    }
-                    else{
-                        root.addElement("displayName").addText(expDispName);
-                    }
+        long start = GenerationMetrics.start();
+        GeneratorTemplate template = job.getGeneratorTemplate();
+        this.metrics.stop(GenerationMetrics.Phase.TEMPLATE, start);
+        Map<String, String> values = getValues(params);
+        List<String> names = getDownstreamNames(downstream);
+        if(summary != null){
+            summary.add(downstream, names);
+        }
+        String fingerprint = this.getFingerprint(job, template, values,
+                                                 names);
+        AbstractProject item =
+                (AbstractProject) Jenkins.getInstance().getItem(expName);
+        GeneratedJobBuildAction.Outcome outcome;
+        // run conditions depend on the environment of the run, which is not
+        // part of the fingerprint, templates without any are streamable
+        if(this.getIncremental(job) && item != null &&
+           template.isStreamable() &&
+           GeneratedJobDigest.isFingerprintUpToDate(item.getRootDir(),
+                                                    fingerprint)){
+            outcome = GeneratedJobBuildAction.Outcome.SKIPPED;
+            LOGGER.fine(String.format("Inputs of job %s are unchanged",
+                                      expName));
+        }
+        else{
+            ByteBuffer config = this.render(job, params, downstream, template,
+                                            expDispName, listener);
+            start = GenerationMetrics.start();
+            String digest = GeneratedJobDigest.compute(config);
+            this.metrics.stop(GenerationMetrics.Phase.DIGEST, start);
+            start = GenerationMetrics.start();
+            InputStream is = config.newInputStream();
+            if(this.plan != null){
+                // the rendered configuration is dropped right away
+                if(item == null){
+                    outcome = GeneratedJobBuildAction.Outcome.CREATED;
                 }
-                // Expand Vars
-                Visitor v = new ExpandVarsVisitor(
-                        params, downstreamGenerators, job.getDisableJobs());
-                doc.accept(v);
-                // Remove info specific to Job Generator
-                v = new GatherElementsToRemoveVisitor();
-                doc.accept(v);
-                for(Element e: ((GatherElementsToRemoveVisitor)v).toRemove){
-                    e.detach();
+                else if(GeneratedJobDigest.isUpToDate(item.getRootDir(),
+                                                      digest)){
+                    outcome = GeneratedJobBuildAction.Outcome.UNCHANGED;
                 }
-                this.removeNodeIfNoChild(doc, "parameterDefinitions");
-                this.removeNodeIfNoChild(doc,
-                                  "hudson.model.ParametersDefinitionProperty");
-                this.removeNodeIfNoChild(doc, "generatedJobName");
-                this.removeNodeIfNoChild(doc, "generatedDisplayJobName");
-                this.removeNodeIfNoChild(doc, "autoRunJob");
-                // Evaluate builders (Single step)
-                List vroots = doc.selectNodes("//org.jenkinsci.plugins." +
-                   "conditionalbuildstep.singlestep.SingleConditionalBuilder");
-                for (Iterator i = vroots.iterator(); i.hasNext();) {
-                    Element vroot = (Element) i.next();
-                    v = new EvaluateBuildersSingleVisitor(vroot,
-                                               (AbstractBuild<?, ?>)getBuild(),
-                                               listener);
-                    vroot.accept(v);
-                    for (Element e: ((EvaluateBuildersSingleVisitor)v).toAdd){
-                        List siblings = vroot.getParent().elements();
-                        siblings.add(siblings.indexOf(vroot), e);
-                    }
-                    for (Element e:
-                         ((EvaluateBuildersSingleVisitor)v).toRemove) {
-                        e.detach();
-                    }
+                else{
+                    outcome = GeneratedJobBuildAction.Outcome.UPDATED;
                 }
-                // Evaluate builders (Multiple steps)
-                vroots = doc.selectNodes("//org.jenkinsci.plugins." +
-                                    "conditionalbuildstep.ConditionalBuilder");
-                for (Iterator i = vroots.iterator(); i.hasNext();) {
-                    Element vroot = (Element) i.next();
-                    v = new EvaluateBuildersMultiVisitor(vroot,
-                                               (AbstractBuild<?, ?>)getBuild(),
-                                               listener);
-                    vroot.accept(v);
-                    for (Element e: ((EvaluateBuildersMultiVisitor)v).toAdd){
-                        List siblings = vroot.getParent().elements();
-                        siblings.add(siblings.indexOf(vroot), e);
-                    }
-                    for (Element e:
-                         ((EvaluateBuildersMultiVisitor)v).toRemove) {
-                        e.detach();
+            }
+            else if(item != null){
+                File dir = item.getRootDir();
+                if(GeneratedJobDigest.isUpToDate(dir, digest)){
+                    outcome = GeneratedJobBuildAction.Outcome.UNCHANGED;
+                    if(!GeneratedJobDigest.isFingerprintUpToDate(
+                                                        dir, fingerprint)){
+                        GeneratedJobDigest.save(dir, digest, fingerprint);
                     }
+                    LOGGER.fine(String.format("Configuration of job %s is " +
+                                              "unchanged", expName));
                 }
-                // Evaluate publishers
-                Element flexroot = (Element) doc.selectSingleNode(
-                                "//org.jenkins__ci.plugins." +
-                                "flexible__publish.FlexiblePublisher");
-                if(flexroot != null){
-                    vroots = doc.selectNodes("//org.jenkins__ci.plugins." +
-                                     "flexible__publish.ConditionalPublisher");
-                    for (Iterator i = vroots.iterator(); i.hasNext();) {
-                        Element vroot = (Element) i.next();
-                        v = new EvaluatePublishersVisitor(vroot,
-                                               (AbstractBuild<?, ?>)getBuild(),
-                                               listener);
-                        vroot.accept(v);
-                        for (Element e: ((EvaluatePublishersVisitor)v).toAdd){
-                            List siblings = flexroot.getParent().elements();
-                            siblings.add(siblings.indexOf(flexroot), e);
-                        }
-                        for (Element e:
-                             ((EvaluatePublishersVisitor)v).toRemove) {
-                            e.detach();
-                        }
-                    }
-                    this.removeNodeIfNoChild(flexroot, "publishers");
-                    this.removeNodeIfNoChild(doc, "org.jenkins__ci.plugins." +
-                                        "flexible__publish.FlexiblePublisher");
-                }
-                // Create/Update Job
-                doc.normalize();
-                InputStream is = new ByteArrayInputStream(
-                                                doc.asXML().getBytes("UTF-8"));
-//                System.out.println(doc.asXML());
-                AbstractProject item = 
-                        (AbstractProject) Jenkins.getInstance().getItem(expName);
-                if(item != null){
-                    StreamSource ss = new StreamSource(is);
-                    item.updateByXml(ss);
+                else{
+                    this.session.update(item, is);
+                    GeneratedJobDigest.save(dir, digest, fingerprint);
+                    outcome = GeneratedJobBuildAction.Outcome.UPDATED;
                     LOGGER.info(String.format("Updated configuration of " +
                                               "job %s", expName));
                 }
-                else{
-                    item = (AbstractProject)
-                            Jenkins.getInstance().createProjectFromXML(
-                                                                  expName, is);
-                    LOGGER.info(String.format("Created job %s", expName));
-                }
-                // save generated job name
-                GeneratedJobBuildAction action =
-                              new GeneratedJobBuildAction(expName, item!=null);
-                getBuild().addAction(action);
-                // auto run the job
-                if(job.getAutoRunJob()){
-                    Cause.UserIdCause cause = new Cause.UserIdCause();
-                    item.scheduleBuild(5, cause);
+            }
+            else{
+                item = this.session.create(expName, d, is);
+                GeneratedJobDigest.save(item.getRootDir(), digest,
+                                        fingerprint);
+                outcome = GeneratedJobBuildAction.Outcome.CREATED;
+                LOGGER.info(String.format("Created job %s", expName));
+            }
+            this.metrics.stop(GenerationMetrics.Phase.SAVE, start);
+        }
+        this.metrics.add(GenerationMetrics.Counter.JOBS, 1);
+        if(this.plan != null){
+            this.plan.add(GenerationPlan.Change.of(outcome), expName);
+            this.recordGenerated(job, expName, outcome);
+            return new GeneratedJobBuildAction(expName, outcome);
+        }
+        GeneratedJobsIndex index = job.getGeneratedJobsIndex();
+        index.record(expName, values, this.origin);
+        this.indexes.add(index);
+        this.recordGenerated(job, expName, outcome);
+        // auto run the job
+        if(job.getAutoRunJob()){
+            this.session.run(item);
+        }
+        return new GeneratedJobBuildAction(expName, outcome);
+    }
+
+    /**
+     * @return the configuration of the job generated with the passed
+     *         parameters.
+     */
+    private ByteBuffer render(JobGenerator job,
+                              List<ParametersAction> params,
+                              List<DownstreamGenerator> downstream,
+                              GeneratorTemplate template,
+                              String expDispName,
+                              BuildListener listener)
+            throws IOException, InterruptedException {
+        this.metrics.add(GenerationMetrics.Counter.BYTES_PARSED,
+                         template.getSize());
+        ByteBuffer config = new ByteBuffer();
+        int nodes;
+        int placeholders;
+        if(StreamingConfigWriter.ENABLED && template.isStreamable()){
+            long start = GenerationMetrics.start();
+            RenderRequest request = new RenderRequest(template,
+                    getValues(params), new ProjectReferences(downstream),
+                    this.getDisableJobs(job), expDispName);
+            RenderRequest.Rendered r = null;
+            if(RendererPool.isEnabled()){
+                r = RendererPool.get().render(request);
+            }
+            if(r != null){
+                config.write(r.getConfig());
+            }
+            else{
+                r = request.render(template, config);
+            }
+            nodes = r.getNodes();
+            placeholders = r.getPlaceholders();
+            this.metrics.stop(GenerationMetrics.Phase.EXPAND, start);
+        }
+        else{
+            ExpandVarsHandler expander = new ExpandVarsHandler(
+                    params, downstream, this.getDisableJobs(job), template);
+            this.writeDocument(template, expander, expDispName, listener,
+                               config);
+            nodes = expander.getNodes();
+            placeholders = expander.getPlaceholders();
+        }
+        this.metrics.add(GenerationMetrics.Counter.NODES_VISITED, nodes);
+        this.metrics.add(GenerationMetrics.Counter.PLACEHOLDERS_REPLACED,
+                         placeholders);
+        return config;
+    }
+
+    /**
+     * @return the fingerprint of everything the configuration of a generated
+     *         job depends on: the template, the parameter values, the
+     *         options and the names of the downstream jobs it refers to.
+     */
+    private String getFingerprint(JobGenerator job,
+                                  GeneratorTemplate template,
+                                  Map<String, String> values,
+                                  List<String> downstreamNames)
+            throws IOException {
+        List<String> inputs = new ArrayList<String>();
+        inputs.add(template.getDigest());
+        inputs.add(String.valueOf(this.getDisableJobs(job)));
+        for(Entry<String, String> e:
+                new TreeMap<String, String>(values).entrySet()){
+            inputs.add(e.getKey());
+            inputs.add(e.getValue());
+        }
+        inputs.addAll(downstreamNames);
+        return GeneratedJobDigest.fingerprint(inputs);
+    }
+
+    /**
+     * @return the name of each downstream project followed by the names of
+     *         the jobs it generates.
+     */
+    private static List<String> getDownstreamNames(
+            List<DownstreamGenerator> downstream) {
+        List<String> names = new ArrayList<String>();
+        for(DownstreamGenerator dg: downstream){
+            names.add(dg.job.getName());
+            if(JobGenerator.class.isInstance(dg.job)){
+                for(List<ParametersAction> lpa: dg.importParams){
+                    names.add(getExpandedJobName((JobGenerator) dg.job, lpa));
                 }
             }
-            return Result.SUCCESS;
         }
+        return names;
+    }
 
-        @Override
-        public void post2(BuildListener listener) throws Exception {
+    private boolean getDisableJobs(JobGenerator job) {
+        return this.batch != null ? this.batch.getDisableJobs() :
+                                    job.getDisableJobs();
+    }
+
+    private boolean getProcessThisJobOnly(JobGenerator job) {
+        return this.batch != null ? this.batch.getProcessThisJobOnly() :
+                                    job.getProcessThisJobOnly();
+    }
+
+    // batches neither delete nor incrementally regenerate jobs
+    private boolean getIncremental(JobGenerator job) {
+        return this.batch == null && job.getIncremental();
+    }
+
+    private boolean getDeleteVanished(JobGenerator job) {
+        return this.batch == null && job.getDeleteVanished();
+    }
+
+    private boolean getDelete(JobGenerator job) {
+        return this.batch == null && job.getDelete();
+    }
+
+    /**
+     * Passes the options of this run to a downstream job generator, they are
+     * read by its builds when it is not generated by this run.
+     */
+    private void copyOptions(JobGenerator job, JobGenerator p) {
+        if(this.batch == null){
+            job.copyOptions(p);
+            return;
         }
+        p.setDelete(false);
+        p.setProcessThisJobOnly(this.batch.getProcessThisJobOnly());
+        p.setDisableJobs(this.batch.getDisableJobs());
+        p.setIncremental(false);
+        p.setDeleteVanished(false);
+    }
 
-        /**
-         * Execute all downstream projects and pass template parameters to them.
-         * Only the initiator of the build can schedule the build of the
-         * downstream project.
-         */
-        @Override
-        public void cleanUp(BuildListener listener) throws Exception {
-            JobGenerator job = getJobGenerator();
-            if(job.getProcessThisJobOnly() || job.getDelete()){
-                return;
+    private void recordGenerated(JobGenerator job, String expName,
+                                 GeneratedJobBuildAction.Outcome outcome) {
+        synchronized(this.generatedJobs){
+            Set<String> jobs = this.generatedJobs.get(job);
+            if(jobs == null){
+                jobs = new HashSet<String>();
+                this.generatedJobs.put(job, jobs);
             }
-            for(DownstreamGenerator dg: downstreamGenerators){
-                for(List<ParametersAction> lpa: dg.importParams){
-                    Cause.UpstreamCause cause = new Cause.UpstreamCause(
-                                                                   getBuild());
-                    dg.job.scheduleBuild2(0, cause, lpa);
+            jobs.add(expName);
+        }
+        if(this.getIncremental(job)){
+            if(outcome == GeneratedJobBuildAction.Outcome.SKIPPED){
+                this.skippedJobs.add(expName);
+            }
+            else{
+                this.regeneratedJobs.add(expName);
+            }
+        }
+    }
+
+    /**
+     * @return the error message if the passed job generator cannot generate
+     *         a job with the passed parameters, null otherwise.
+     */
+    String checkParameters(JobGenerator job, List<ParametersAction> params) {
+        String expName = getExpandedJobName(job, params);
+        if(job.getGeneratedJobName().isEmpty()){
+            return "Generated Project Name cannot be empty. " +
+                   "Please review the configuration of the " +
+                   "project.";
+        }
+        else if(job.getName().equals(expName)){
+            return "Generated Project Name cannot be equal " +
+                   "to the Job Generator name. " +
+                   "Please review the configuration of the " +
+                   "project.";
+        }
+        else{
+            // check if the expanded name correspond to another job
+            // generator
+            TopLevelItem i = Jenkins.getInstance().getItem(expName);
+            if(i != null){
+                if(JobGenerator.class.isInstance(i)){
+                    return "Generated Project Name corresponds " +
+                           "to a the Job Generator " +
+                           i.getName() +
+                           ". Generation has been aborted to " +
+                           "prevent any loss of data.";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param env environment used to expand the predefined generator
+     *        parameters and seen by the parameter factories, if null the
+     *        environment of this build is used.
+     */
+    List<DownstreamGenerator> gatherDownstreamGenerators(
+            JobGenerator job,
+            List<ParametersAction> lpa,
+            EnvVars env,
+            BuildListener listener) throws Exception {
+        long start = GenerationMetrics.start();
+        if(env != null){
+            this.current.set(GeneratorEnvironment.wrap(env));
+        }
+        try {
+            return this.doGatherDownstreamGenerators(job, lpa, env, listener);
+        } finally {
+            this.current.remove();
+            this.metrics.stop(GenerationMetrics.Phase.DOWNSTREAM, start);
+        }
+    }
+
+    private List<DownstreamGenerator> doGatherDownstreamGenerators(
+            JobGenerator job,
+            List<ParametersAction> lpa,
+            EnvVars env,
+            BuildListener listener) throws Exception {
+        List<DownstreamGenerator> downstream =
+                                          new ArrayList<DownstreamGenerator>();
+        List<AbstractProject> processedProjects =
+                new ArrayList<AbstractProject>();
+        // parameterized build trigger build trigger
+        BuildTrigger bt = job.getPublishersList().get(BuildTrigger.class);
+        if (bt != null) {
+            for (ListIterator<BuildTriggerConfig> btc =
+                    bt.getConfigs().listIterator(); btc.hasNext();) {
+                BuildTriggerConfig c = btc.next();
+                for (AbstractProject p : c.getProjectList(job.getParent(),
+                                                          null)) {
+                    List<List<ParametersAction>> importParams =
+                                   new ArrayList<List<ParametersAction>>();
+                    importParams.add(new ArrayList<ParametersAction>());
+                    importParams.get(0).addAll(lpa);
+                    List<AbstractBuildParameters> lbp = c.getConfigs();
+                    for(AbstractBuildParameters bp: lbp){
+                        if(bp.getClass().getSimpleName().equals(
+                                        "PredefinedGeneratorParameters")){
+                            importParams.get(0).add(
+                                    this.getAction(bp, env, listener));
+                        }
+                    }
+                    if (JobGenerator.class.isInstance(p)){
+                        this.copyOptions(job, (JobGenerator) p);
+                        downstream.add(
+                                     new DownstreamGenerator(p, importParams));
+                        processedProjects.add(p);
                     }
+                }
             }
         }
 
-        private void gatherDownstreamGenerators(BuildListener listener)
-                throws Exception {
-            JobGenerator job = getJobGenerator();
-            List<AbstractProject> processedProjects =
-                    new ArrayList<AbstractProject>();
-            List<ParametersAction> lpa = getBuild().getActions(
-                                          hudson.model.ParametersAction.class);
-            // parameterized build trigger build trigger
-            BuildTrigger bt = job.getPublishersList().get(BuildTrigger.class);
-            if (bt != null) {
-                for (ListIterator<BuildTriggerConfig> btc =
-                        bt.getConfigs().listIterator(); btc.hasNext();) {
-                    BuildTriggerConfig c = btc.next();
-                    for (AbstractProject p : c.getProjectList(job.getParent(),
-                                                              null)) {
-                        List<List<ParametersAction>> importParams =
-                                       new ArrayList<List<ParametersAction>>();
+        // parameterized build trigger build step
+        List<TriggerBuilder> tbl = job.getBuildersList().getAll(
+                                                     TriggerBuilder.class);
+        this.gatherDownstreamGeneratorsFromTriggerBuilder(
+                job, tbl, lpa, env, listener, downstream);
+        // parameterized build trigger step digged into a conditional step
+        List<SingleConditionalBuilder> scbl = job.getBuildersList().getAll(
+                                           SingleConditionalBuilder.class);
+        tbl.clear();
+        for(SingleConditionalBuilder scb: scbl){
+            BuildStep bs = scb.getBuildStep();
+            if(TriggerBuilder.class.isInstance(bs)){
+                tbl.add((TriggerBuilder)bs);
+            }
+        }
+        this.gatherDownstreamGeneratorsFromTriggerBuilder(
+                job, tbl, lpa, env, listener, downstream);
+
+        // standard Jenkins dependencies
+        for(AbstractProject dp: job.getDownstreamProjects()){
+            if(!processedProjects.contains(dp)){
+                if (JobGenerator.class.isInstance(dp)){
+                    this.copyOptions(job, (JobGenerator) dp);
+                    List<List<ParametersAction>> importParams =
+                                   new ArrayList<List<ParametersAction>>();
+                    importParams.add(new ArrayList<ParametersAction>());
+                    importParams.get(0).addAll(lpa);
+                    downstream.add(new DownstreamGenerator(dp, importParams));
+                }
+            }
+        }
+        return downstream;
+    }
+
+    private void gatherDownstreamGeneratorsFromTriggerBuilder(
+            JobGenerator job,
+            List<TriggerBuilder> builders,
+            List<ParametersAction> params,
+            EnvVars env,
+            BuildListener listener,
+            List<DownstreamGenerator> downstream) throws Exception {
+        for(TriggerBuilder tb: builders){
+            for (ListIterator<BlockableBuildTriggerConfig> tbc =
+                    tb.getConfigs().listIterator(); tbc.hasNext();) {
+                BuildTriggerConfig c = tbc.next();
+                for (AbstractProject p : c.getProjectList(
+                                             job.getParent(),null)) {
+                    List<List<ParametersAction>> importParams =
+                                   new ArrayList<List<ParametersAction>>();
+                    CartesianProduct<AbstractBuildParameters> llbpf =
+                            GeneratorRun.getDynamicBuildParameters(
+                                        this, listener, c.getConfigFactories());
+                    if(llbpf.size() == 0){
                         importParams.add(new ArrayList<ParametersAction>());
-                        importParams.get(0).addAll(lpa);
+                        importParams.get(0).addAll(params);
                         List<AbstractBuildParameters> lbp = c.getConfigs();
                         for(AbstractBuildParameters bp: lbp){
                             if(bp.getClass().getSimpleName().equals(
-                                            "PredefinedGeneratorParameters")){
-                                importParams.get(0).add((ParametersAction)
-                                    bp.getAction(GeneratorRun.this, listener));
+                                        "PredefinedGeneratorParameters")){
+                                importParams.get(0).add(
+                                        this.getAction(bp, env, listener));
                             }
                         }
-                        if (JobGenerator.class.isInstance(p)){
-                            job.copyOptions((JobGenerator) p);
-                            downstreamGenerators.add(
-                                         new DownstreamGenerator(p, importParams));
-                            processedProjects.add(p);
+                    }
+                    else{
+                        // build parameters are converted on demand when the
+                        // invocations are combined, lazy factors are never
+                        // materialized
+                        EnvVars vars = env;
+                        if(vars == null){
+                            vars = this.getGeneratorEnvironment(
+                                                     listener).getVars();
+                        }
+                        List<List<ParametersAction>> factors =
+                                   new ArrayList<List<ParametersAction>>();
+                        for(List<AbstractBuildParameters> lbpf:
+                                                        llbpf.getFactors()){
+                            ActionList actions = new ActionList(lbpf, vars);
+                            // report malformed parameters before the first
+                            // invocation is generated
+                            actions.getAction(0);
+                            factors.add(actions);
                         }
+                        importParams = CartesianProduct.create(
+                                                           params, factors, 0);
+                    }
+                    if (JobGenerator.class.isInstance(p)){
+                        this.copyOptions(job, (JobGenerator) p);
+                        downstream.add(
+                                new DownstreamGenerator(p, importParams));
                     }
                 }
             }
+        }
+    }
 
-            // parameterized build trigger build step
-            List<TriggerBuilder> tbl = job.getBuildersList().getAll(
-                                                         TriggerBuilder.class);
-            this.gatherDownstreamGeneratorsFromTriggerBuilder(
-                    tbl, lpa, listener);
-            // parameterized build trigger step digged into a conditional step
-            List<SingleConditionalBuilder> scbl = job.getBuildersList().getAll(
-                                               SingleConditionalBuilder.class);
-            tbl.clear();
-            for(SingleConditionalBuilder scb: scbl){
-                BuildStep bs = scb.getBuildStep();
-                if(TriggerBuilder.class.isInstance(bs)){
-                    tbl.add((TriggerBuilder)bs);
-                }
-            }
-            this.gatherDownstreamGeneratorsFromTriggerBuilder(tbl, lpa,
-                                                              listener);
-
-            // standard Jenkins dependencies
-            for(AbstractProject dp: job.getDownstreamProjects()){
-                if(!processedProjects.contains(dp)){
-                    if (JobGenerator.class.isInstance(dp)){
-                        job.copyOptions((JobGenerator) dp);
-                        List<List<ParametersAction>> importParams =
-                                       new ArrayList<List<ParametersAction>>();
-                        importParams.add(new ArrayList<ParametersAction>());
-                        importParams.get(0).addAll(lpa);
-                        downstreamGenerators.add(
-                                        new DownstreamGenerator(dp, importParams));
+    /**
+     * Parameters of the elements of a factor computed by parameter factories,
+     * converted each time they are read.
+     */
+    private static final class ActionList extends
+            AbstractList<ParametersAction> implements RandomAccess {
+        private final List<AbstractBuildParameters> factor;
+        private final EnvVars env;
+
+        private ActionList(List<AbstractBuildParameters> factor, EnvVars env) {
+            this.factor = factor;
+            this.env = env;
+        }
+
+        /**
+         * @return null if the element is not a predefined generator
+         *         parameter.
+         */
+        private ParametersAction getAction(int index) throws IOException {
+            AbstractBuildParameters bp = this.factor.get(index);
+            if(!PredefinedGeneratorParameters.class.isInstance(bp)){
+                return null;
+            }
+            return (ParametersAction)
+                    ((PredefinedGeneratorParameters) bp).getAction(this.env);
+        }
+
+        @Override
+        public ParametersAction get(int index) {
+            try {
+                return this.getAction(index);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public int size() {
+            return this.factor.size();
+        }
+    }
+
+    private ParametersAction getAction(AbstractBuildParameters bp,
+                                       EnvVars env,
+                                       BuildListener listener)
+            throws Exception {
+        if(PredefinedGeneratorParameters.class.isInstance(bp)){
+            if(env == null){
+                env = this.getGeneratorEnvironment(listener).getVars();
+            }
+            return (ParametersAction)
+                    ((PredefinedGeneratorParameters) bp).getAction(env);
+        }
+        return (ParametersAction) bp.getAction(this, listener);
+    }
+
+    /**
+     * @return the environment captured by this run, or the one of the
+     *         parameter set whose downstream generators are being gathered,
+     *         see {@link GeneratorEnvironment#of}.
+     */
+    synchronized GeneratorEnvironment getGeneratorEnvironment(
+            TaskListener listener) throws IOException, InterruptedException {
+        // transient fields are not set on runs loaded from disk
+        GeneratorEnvironment env = this.current == null ? null :
+                                                           this.current.get();
+        if(env != null){
+            return env;
+        }
+        if(this.environment == null){
+            this.environment = GeneratorEnvironment.capture(this, listener);
+        }
+        return this.environment;
+    }
+
+    /**
+     * @return the environment the next build of the passed job generator
+     *         would have if it was triggered with the passed parameters:
+     *         the variables identifying the build refer to that build
+     *         instead of this one.
+     */
+    EnvVars getEnvironment(EnvVars base, JobGenerator job,
+                           List<ParametersAction> params) {
+        EnvVars env = this.getEnvironment(base, params);
+        String name = job.getFullName();
+        int number = job.getNextBuildNumber();
+        env.put("JOB_NAME", name);
+        env.put("BUILD_NUMBER", String.valueOf(number));
+        env.put("BUILD_DISPLAY_NAME", "#" + number);
+        env.put("BUILD_TAG", "jenkins-" + name.replace('/', '-') + "-" +
+                             number);
+        String root = Jenkins.getInstance().getRootUrl();
+        if(root != null){
+            env.put("JOB_URL", root + job.getUrl());
+            env.put("BUILD_URL", root + job.getUrl() + number + "/");
+        }
+        return env;
+    }
+
+    /**
+     * @return the passed environment with the variables contributed by the
+     *         passed parameters, as in the build of a job generator
+     *         triggered with these parameters.
+     */
+    EnvVars getEnvironment(EnvVars base, List<ParametersAction> params) {
+        EnvVars env = new EnvVars(base);
+        for(ParametersAction pa: params){
+            for(ParameterValue v: pa.getParameters()){
+                v.buildEnvVars(this, env);
+            }
+        }
+        return env;
+    }
+
+    /**
+     * @return Inner list represents a set of build parameters used together
+     *         for one invocation of a project, and outer list represents
+     *         multiple invocations of the same project. The combinations
+     *         are built on demand.
+     * @throws AbortException if there are more combinations than
+     *         {@link #MAX_COMBINATIONS}
+     */
+    static CartesianProduct<AbstractBuildParameters> getDynamicBuildParameters(
+            AbstractBuild<?, ?> build, TaskListener listener,
+            List<AbstractBuildParameterFactory> configFactories)
+            throws DontTriggerException, IOException, InterruptedException {
+        List<List<AbstractBuildParameters>> factors =
+                                new ArrayList<List<AbstractBuildParameters>>();
+        if (configFactories != null) {
+            for (AbstractBuildParameterFactory configFactory:
+                configFactories) {
+                factors.add(configFactory.getParameters(build, listener));
+            }
+        }
+        return CartesianProduct.create(
+                Collections.<AbstractBuildParameters> emptyList(), factors,
+                MAX_COMBINATIONS);
+    }
+
+    /**
+     * Generates the job configuration from a copy of the template
+     * document, conditional steps are evaluated when possible.
+     */
+    private void writeDocument(GeneratorTemplate template,
+                               ExpandVarsHandler expander,
+                               String expDispName,
+                               BuildListener listener,
+                               OutputStream out) throws IOException {
+        long start = GenerationMetrics.start();
+        Document doc = template.newDocument();
+        this.metrics.stop(GenerationMetrics.Phase.TEMPLATE, start);
+        start = GenerationMetrics.start();
+        // Single walk expanding the document and gathering the elements
+        // to fix up
+        GeneratorVisitor v = new GeneratorVisitor();
+        final String displayName = expDispName;
+        GeneratorVisitor.Collector dispNames =
+                                        new GeneratorVisitor.Collector();
+        if(!displayName.isEmpty()){
+            v.register("displayName", new GeneratorVisitor.ElementHandler(){
+                private boolean done = false;
+                public void handle(Element node) {
+                    if(!this.done){
+                        node.setText(displayName);
+                        this.done = true;
+                    }
+                }
+            });
+            v.register("displayName", dispNames);
+        }
+        v.register((GeneratorVisitor.ElementHandler) expander);
+        v.register((GeneratorVisitor.TextHandler) expander);
+        GeneratorVisitor.Collector singles =
+                                        new GeneratorVisitor.Collector();
+        GeneratorVisitor.Collector multis =
+                                        new GeneratorVisitor.Collector();
+        GeneratorVisitor.Collector flexs = new GeneratorVisitor.Collector();
+        GeneratorVisitor.Collector conditionals =
+                                        new GeneratorVisitor.Collector();
+        GeneratorVisitor.Collector publishers =
+                                        new GeneratorVisitor.Collector();
+        if(template.hasSingleConditionalBuilders()){
+            v.register(GeneratorTemplate.SINGLE_CONDITIONAL_BUILDER,
+                       singles);
+        }
+        if(template.hasConditionalBuilders()){
+            v.register(GeneratorTemplate.CONDITIONAL_BUILDER, multis);
+        }
+        if(template.hasFlexiblePublishers()){
+            v.register(GeneratorTemplate.FLEXIBLE_PUBLISHER, flexs);
+            v.register(GeneratorTemplate.CONDITIONAL_PUBLISHER,
+                       conditionals);
+            v.register("publishers", publishers);
+        }
+        doc.accept(v);
+        // Update Display Name
+        if(!displayName.isEmpty() && dispNames.getFirst() == null){
+            doc.getRootElement().addElement("displayName").addText(
+                                  expander.expand(displayName, "displayName"));
+        }
+        this.metrics.stop(GenerationMetrics.Phase.EXPAND, start);
+        start = GenerationMetrics.start();
+        int evaluated = 0;
+        // Evaluate builders (Single step)
+        for (Element vroot: singles.getElements()) {
+            EvaluateBuildersSingleVisitor ev =
+                new EvaluateBuildersSingleVisitor(vroot,
+                                           this,
+                                           listener);
+            vroot.accept(ev);
+            evaluated += ev.evaluated;
+            for (Element e: ev.toAdd){
+                List siblings = vroot.getParent().elements();
+                siblings.add(siblings.indexOf(vroot), e);
+            }
+            for (Element e: ev.toRemove) {
+                e.detach();
+            }
+        }
+        // Evaluate builders (Multiple steps)
+        for (Element vroot: multis.getElements()) {
+            EvaluateBuildersMultiVisitor ev =
+                new EvaluateBuildersMultiVisitor(vroot,
+                                           this,
+                                           listener);
+            vroot.accept(ev);
+            evaluated += ev.evaluated;
+            for (Element e: ev.toAdd){
+                List siblings = vroot.getParent().elements();
+                siblings.add(siblings.indexOf(vroot), e);
+            }
+            for (Element e: ev.toRemove) {
+                e.detach();
+            }
+        }
+        // Evaluate publishers
+        Element flexroot = flexs.getFirst();
+        if(flexroot != null){
+            for (Element vroot: conditionals.getElements()) {
+                EvaluatePublishersVisitor ev =
+                    new EvaluatePublishersVisitor(vroot,
+                                           this,
+                                           listener);
+                vroot.accept(ev);
+                evaluated += ev.evaluated;
+                for (Element e: ev.toAdd){
+                    List siblings = flexroot.getParent().elements();
+                    siblings.add(siblings.indexOf(flexroot), e);
+                }
+                for (Element e: ev.toRemove) {
+                    e.detach();
+                }
+            }
+            for (Element e: publishers.getElements()) {
+                GeneratorTemplate.removeIfNoChild(e);
+            }
+            for (Element e: flexs.getElements()) {
+                GeneratorTemplate.removeIfNoChild(e);
+            }
+        }
+        this.metrics.stop(GenerationMetrics.Phase.CONDITIONS, start);
+        this.metrics.add(GenerationMetrics.Counter.CONDITIONS_EVALUATED,
+                         evaluated);
+        start = GenerationMetrics.start();
+        XMLWriter writer = new XMLWriter(out, new OutputFormat());
+        writer.write(doc);
+        writer.flush();
+        this.metrics.stop(GenerationMetrics.Phase.SERIALIZE, start);
+    }
+
+    protected class GeneratorImpl extends AbstractBuildExecution {
+        // downstream generators have been processed by the generation engine
+        private boolean generated = false;
+
+        public GeneratorImpl() {
+        }
+
+        protected Result doRun(BuildListener listener) throws Exception {
+            // shared by all the generator parameters of the run
+            getGeneratorEnvironment(listener);
+            Result result = null;
+            try {
+                result = this.doGenerate(listener);
+            } finally {
+                try {
+                    this.complete();
+                } catch (Exception e) {
+                    if(result != null){
+                        throw e;
                     }
+                    // the failure of the generation is the one reported
+                    e.printStackTrace(listener.error(
+                                        "Unable to complete the generation"));
                 }
             }
+            if(!summary.isEmpty()){
+                getBuild().addAction(summary.toAction());
+            }
+            return result;
         }
 
-        private void gatherDownstreamGeneratorsFromTriggerBuilder(
-                List<TriggerBuilder> builders,
-                List<ParametersAction> params,
-                BuildListener listener) throws Exception {
+        /**
+         * Commits the changes made by the generation and records its
+         * metrics.
+         */
+        private void complete() throws IOException {
+            long start = GenerationMetrics.start();
+            session.commit();
+            metrics.stop(GenerationMetrics.Phase.SAVE, start);
+            for(GeneratedJobsIndex index: indexes){
+                index.save();
+            }
+            indexes.clear();
+            if(plan != null){
+                plan.close();
+                getBuild().addAction(plan.toAction());
+            }
+            getBuild().addAction(new GenerationMetricsBuildAction(
+                    metrics.getDurations(), metrics.getCounters()));
+        }
+
+        private Result doGenerate(BuildListener listener) throws Exception {
             JobGenerator job = getJobGenerator();
-            for(TriggerBuilder tb: builders){
-                for (ListIterator<BlockableBuildTriggerConfig> tbc =
-                        tb.getConfigs().listIterator(); tbc.hasNext();) {
-                    BuildTriggerConfig c = tbc.next();
-                    for (AbstractProject p : c.getProjectList(
-                                                 job.getParent(),null)) {
-                        List<List<ParametersAction>> importParams =
-                                       new ArrayList<List<ParametersAction>>();
-                        List<List<AbstractBuildParameters>> llbpf =
-                                this.getDynamicBuildParameters(
-                                            (AbstractBuild<?, ?>)getBuild(),
-                                            listener, c.getConfigFactories());
-                        if(llbpf.size() == 0){
-                            importParams.add(new ArrayList<ParametersAction>());
-                            importParams.get(0).addAll(params);
-                            List<AbstractBuildParameters> lbp = c.getConfigs();
-                            for(AbstractBuildParameters bp: lbp){
-                                if(bp.getClass().getSimpleName().equals(
-                                            "PredefinedGeneratorParameters")){
-                                    importParams.get(0).add(
-                                        (ParametersAction)bp.getAction(
-                                                GeneratorRun.this, listener));
-                                }
-                            }
+            List<ParametersAction> params = getBuild().getActions(
+                                          hudson.model.ParametersAction.class);
+            batch = getBuild().getAction(GeneratorBatchAction.class);
+            if(batch != null ? batch.getPlan() :
+                               job.getPlan() && !getDelete(job)){
+                plan = new GenerationPlan(getBuild().getArtifactsDir());
+                listener.getLogger().println("Plan only, no job is written");
+            }
+            if(batch != null){
+                // the downstream generators are gathered for each parameter
+                // set, the batch build has no generator parameter of its own
+                return this.generateBatch(job, batch, listener);
+            }
+            String error = checkParameters(job, params);
+            if(error != null){
+                listener.error(error);
+                return Result.FAILURE;
+            }
+            downstreamGenerators = gatherDownstreamGenerators(
+                                                 job, params, null, listener);
+            if(getDelete(job)){
+                List<String> jobs = new ArrayList<String>();
+                this.deleteJobs(job, !getProcessThisJobOnly(job), jobs);
+                // save deleted job name
+                DeletedJobBuildAction action = new DeletedJobBuildAction(jobs);
+                getBuild().addAction(action);
+            }
+            else{
+                GeneratedJobBuildAction action = generate(job, params,
+                               downstreamGenerators, summary, listener);
+                if(action == null){
+                    return Result.FAILURE;
+                }
+                if(plan == null){
+                    // save generated job name
+                    getBuild().addAction(action);
+                }
+                // incremental generations and plans generate the downstream
+                // jobs in this build to know which ones are no longer
+                // generated
+                if((GenerationEngine.ENABLED || getIncremental(job) ||
+                    plan != null) && !getProcessThisJobOnly(job)){
+                    this.generated = true;
+                    origin = action.getJob();
+                    Result result = new GenerationEngine(GeneratorRun.this,
+                                      listener).generate(downstreamGenerators);
+                    List<String> deleted = new ArrayList<String>();
+                    if(plan != null){
+                        if(result == Result.SUCCESS){
+                            this.deleteVanishedJobs(job, deleted, listener);
                         }
-                        else{
-                            int importIndex = 0;
-                            for(List<AbstractBuildParameters> lbpf: llbpf){
-                                importParams.add(
-                                            new ArrayList<ParametersAction>());
-                                importParams.get(importIndex).addAll(params);
-                                for(AbstractBuildParameters bpf: lbpf){
-                                    if(bpf.getClass().getSimpleName().equals(
-                                            "PredefinedGeneratorParameters")){
-                                        importParams.get(importIndex).add(
-                                            (ParametersAction) bpf.getAction(
-                                                  GeneratorRun.this, listener));
-                                    }
-                                }
-                                importIndex += 1;
-                            }
+                        return result;
+                    }
+                    if(getIncremental(job) && getDeleteVanished(job) &&
+                       result == Result.SUCCESS){
+                        this.deleteVanishedJobs(job, deleted, listener);
+                    }
+                    this.addIncrementalAction(job, deleted);
+                    return result;
+                }
+                if(plan == null){
+                    this.addIncrementalAction(job, new ArrayList<String>());
+                }
+            }
+            return Result.SUCCESS;
+        }
+
+        /**
+         * Generates one job per parameter set of the batch, the downstream
+         * generators are processed once all the jobs are generated.
+         */
+        private Result generateBatch(JobGenerator job,
+                                     GeneratorBatchAction batch,
+                                     BuildListener listener)
+                throws Exception {
+            List<Map<String, String>> sets = batch.getParameterSets();
+            if(sets.size() != batch.getSize()){
+                // the parameter sets are not persisted, a batch queued when
+                // Jenkins restarted must be submitted again
+                String error = "The parameter sets of this batch have been " +
+                               "lost by a restart, submit them again";
+                listener.error(error);
+                for(int i = 0; i < batch.getSize(); i++){
+                    batch.addResult(batch.getIndex(i), null, null, error);
+                }
+                return Result.FAILURE;
+            }
+            EnvVars base = getGeneratorEnvironment(listener).getVars();
+            Result result = Result.SUCCESS;
+            for(int i = 0; i < sets.size(); i++){
+                int index = batch.getIndex(i);
+                List<ParametersAction> params = Collections.singletonList(
+                        GeneratorBatchAction.toParametersAction(sets.get(i)));
+                String expName = getExpandedJobName(job, params);
+                String error = checkParameters(job, params);
+                String status = null;
+                if(error == null){
+                    try {
+                        List<DownstreamGenerator> downstream =
+                            gatherDownstreamGenerators(job, params,
+                                    getEnvironment(base, params), listener);
+                        GeneratedJobBuildAction a = generate(job, params,
+                                          downstream, summary, listener);
+                        if(a != null && plan != null){
+                            status = GenerationPlan.Change.of(a.getOutcome())
+                                                     .name().toLowerCase();
+                            downstreamGenerators.addAll(downstream);
                         }
-                        if (JobGenerator.class.isInstance(p)){
-                            job.copyOptions((JobGenerator) p);
-                            downstreamGenerators.add(
-                                    new DownstreamGenerator(p, importParams));
+                        else if(a != null){
+                            status = a.getOutcome().name().toLowerCase();
+                            downstreamGenerators.addAll(downstream);
                         }
+                        else{
+                            error = "Unable to create the job directory";
+                        }
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        e.printStackTrace(listener.error(
+                                     "Unable to generate job " + expName));
+                        error = e.toString();
                     }
                 }
+                if(error != null){
+                    listener.error(String.format("#%d %s: %s", index,
+                                                 expName, error));
+                    result = Result.FAILURE;
+                }
+                batch.addResult(index, expName, status, error);
             }
+            batch.done();
+            if((GenerationEngine.ENABLED || plan != null) &&
+               !getProcessThisJobOnly(job)){
+                this.generated = true;
+                result = result.combine(
+                        new GenerationEngine(GeneratorRun.this, listener)
+                                             .generate(downstreamGenerators));
+            }
+            return result;
         }
 
+        private void addIncrementalAction(JobGenerator job,
+                                          List<String> deleted) {
+            if(getIncremental(job)){
+                getBuild().addAction(new IncrementalGenerationBuildAction(
+                        new ArrayList<String>(regeneratedJobs),
+                        new ArrayList<String>(skippedJobs), deleted));
+            }
+        }
 
         /**
-         * @return Inner list represents a set of build parameters used together
-         *         for one invocation of a project, and outer list represents
-         *         multiple invocations of the same project.
+         * Deletes the jobs previously generated from the origin of this run
+         * by the downstream generators and which have not been generated by
+         * this run. When planning they are only reported.
          */
-        private List<List<AbstractBuildParameters>> getDynamicBuildParameters(
-                AbstractBuild<?, ?> build, BuildListener listener,
-                List<AbstractBuildParameterFactory> configFactories)
-                throws DontTriggerException, IOException, InterruptedException {
-            if (configFactories == null || configFactories.isEmpty()) {
-                return ImmutableList
-                        .<List<AbstractBuildParameters>> of(ImmutableList
-                                .<AbstractBuildParameters> of());
-            } else {
-                // this code is building the combinations of all
-                // AbstractBuildParameters reported from all factories
-                List<List<AbstractBuildParameters>> dynamicBuildParameters =
-                        Lists.newArrayList();
-                dynamicBuildParameters.add(
-                        Collections.<AbstractBuildParameters> emptyList());
-                for (AbstractBuildParameterFactory configFactory:
-                    configFactories) {
-                    List<List<AbstractBuildParameters>>
-                    newDynParameters = Lists.newArrayList();
-                    List<AbstractBuildParameters> factoryParameters =
-                            configFactory.getParameters(build, listener);
-                    // if factory returns 0 parameters we need to skip
-                    // assigning newDynParameters to dynamicBuildParameters
-                    // as we would add invalid list
-                    if (factoryParameters.size() > 0) {
-                        for (AbstractBuildParameters config:
-                            factoryParameters) {
-                            for (List<AbstractBuildParameters>
-                            dynamicBuildParameter: dynamicBuildParameters) {
-                                newDynParameters.add(ImmutableList
-                                        .<AbstractBuildParameters> builder()
-                                        .addAll(dynamicBuildParameter)
-                                        .add(config).build());
-                            }
+        private void deleteVanishedJobs(JobGenerator job,
+                                        List<String> deletedJobs,
+                                        BuildListener listener) {
+            Map<JobGenerator, Set<String>> generated;
+            synchronized(generatedJobs){
+                generated = new HashMap<JobGenerator, Set<String>>(
+                                                             generatedJobs);
+            }
+            generated.remove(job);
+            for(Entry<JobGenerator, Set<String>> e: generated.entrySet()){
+                GeneratedJobsIndex index = e.getKey().getGeneratedJobsIndex();
+                for(String genjobn: index.getJobs(origin)){
+                    if(e.getValue().contains(genjobn)){
+                        continue;
+                    }
+                    if(plan != null){
+                        if(Jenkins.getInstance().getItem(genjobn) != null){
+                            plan.add(GenerationPlan.Change.TO_DELETE, genjobn);
                         }
-                        dynamicBuildParameters = newDynParameters;
+                        continue;
                     }
+                    if(this.deleteItem(genjobn, deletedJobs)){
+                        listener.getLogger().println(
+                               "Deleted job no longer generated: " + genjobn);
+                    }
+                    index.remove(genjobn);
+                    indexes.add(index);
                 }
-                return dynamicBuildParameters;
             }
         }
 
+        @Override
+        public void post2(BuildListener listener) throws Exception {
+        }
+
+        /**
+         * Execute all downstream projects and pass template parameters to them.
+         * Only the initiator of the build can schedule the build of the
+         * downstream project.
+         */
+        @Override
+        public void cleanUp(BuildListener listener) throws Exception {
+            JobGenerator job = getJobGenerator();
+            try {
+                if(getProcessThisJobOnly(job) || getDelete(job) ||
+                   this.generated){
+                    return;
+                }
+                for(DownstreamGenerator dg: downstreamGenerators){
+                    for(List<ParametersAction> lpa: dg.importParams){
+                        Cause.UpstreamCause cause = new Cause.UpstreamCause(
+                                                                   getBuild());
+                        dg.job.scheduleBuild2(0, cause, lpa);
+                    }
+                }
+            } finally {
+                this.release();
+            }
+        }
+
+        /**
+         * Drops the state of the generation, a completed run only keeps its
+         * actions.
+         */
+        private void release() {
+            downstreamGenerators = new ArrayList<DownstreamGenerator>();
+            summary = new DownstreamSummary();
+            generatedJobs = new HashMap<JobGenerator, Set<String>>();
+            synchronized(GeneratorRun.this){
+                environment = null;
+            }
+            regeneratedJobs.clear();
+            skippedJobs.clear();
+        }
+
         private void deleteJobs(JobGenerator job, boolean deleteChildren,
                                 List<String> deletedJobs){
-            int n = job.getLastSuccessfulBuild().getNumber();
-            this.deleteJob(job, n, deletedJobs);
+            this.deleteJob(job, deletedJobs);
             if(!deleteChildren){
                 return;
             }
+            // delete jobs generated in the same run by the generation engine,
+            // plans do not generate anything
+            Run r = job.getLastSuccessfulBuild();
+            while(r != null &&
+                  r.getAction(GenerationPlanBuildAction.class) != null){
+                r = r.getPreviousSuccessfulBuild();
+            }
+            DownstreamGenerationBuildAction da = r == null ? null :
+                            r.getAction(DownstreamGenerationBuildAction.class);
+            if(da != null){
+                for(String genjobn: da.getJobs()){
+                    this.deleteItem(genjobn, deletedJobs);
+                }
+            }
             // delete children
             BuildTrigger bt = job.getPublishersList().get(BuildTrigger.class);
             if (bt != null) {
@@ -677,177 +1391,135 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
             }
         }
 
-        private void deleteJob(JobGenerator job, int buildnum,
-                               List<String> deletedJobs){
-            GeneratedJobBuildAction a =
-                job.getBuildByNumber(buildnum).getAction(
-                                                GeneratedJobBuildAction.class);
-            if(a == null){
-                this.deleteJobFromPreviousBuild(job, buildnum, deletedJobs);
-            }
-            String genjobn = a.getJob();
-            TopLevelItem i = Jenkins.getInstance().getItem(genjobn);
-            if(i != null){
-                try {
-                    i.delete();
-                    deletedJobs.add(genjobn);
-                }
-                catch (Exception e) {
-                    LOGGER.severe(String.format("Error deleting job %s",
-                                                genjobn));
+        /**
+         * Deletes the most recently generated job which still exists.
+         */
+        private void deleteJob(JobGenerator job, List<String> deletedJobs){
+            GeneratedJobsIndex index = job.getGeneratedJobsIndex();
+            if(index.isIndexed()){
+                for(String genjobn: index.getJobs()){
+                    boolean deleted = this.deleteItem(genjobn, deletedJobs);
+                    index.remove(genjobn);
+                    if(deleted){
+                        break;
+                    }
                 }
-                LOGGER.info(String.format("Deleted job %s", genjobn));
-            }
-            else{
-                this.deleteJobFromPreviousBuild(job, buildnum, deletedJobs);
-            }
-        }
-        
-        private void deleteJobFromPreviousBuild(JobGenerator job,
-                                                int buildnum,
-                                                List<String> deletedJobs){
-            buildnum = buildnum - 1;
-            LOGGER.info("Job does not exist. Trying previous build.");
-            if (buildnum > 0){
-                this.deleteJob(job, buildnum, deletedJobs);
+                indexes.add(index);
+                return;
             }
-        }
-
-        private void removeNodeIfNoChild(Node root, String elem) {
-            List list = root.selectNodes("//" + elem);
-            for (Iterator iter = list.iterator(); iter.hasNext(); ) {
-                Node node = (Node) iter.next();
-                if(node.selectNodes("./*").isEmpty()){
-                    node.detach();
+            // jobs generated before the index existed are only known by the
+            // builds of the job generator
+            for(Run r = job.getLastSuccessfulBuild(); r != null;
+                                                    r = r.getPreviousBuild()){
+                GeneratedJobBuildAction a =
+                                  r.getAction(GeneratedJobBuildAction.class);
+                if(a != null && this.deleteItem(a.getJob(), deletedJobs)){
+                    return;
                 }
+                LOGGER.info("Job does not exist. Trying previous build.");
             }
         }
 
-        private boolean checkParameters(BuildListener listener) {
-            JobGenerator job = getJobGenerator();
-            List<ParametersAction> params = getBuild().getActions(
-                                          hudson.model.ParametersAction.class);
-            String expName = getExpandedJobName(job, params);
-            if(job.getGeneratedJobName().isEmpty()){
-                listener.error("Generated Project Name cannot be empty. " +
-                               "Please review the configuration of the " +
-                               "project.");
+        /**
+         * @return false if the job does not exist.
+         */
+        private boolean deleteItem(String genjobn, List<String> deletedJobs){
+            TopLevelItem i = Jenkins.getInstance().getItem(genjobn);
+            if(i == null){
                 return false;
             }
-            else if(job.getName().equals(expName)){
-                listener.error("Generated Project Name cannot be equal " +
-                               "to the Job Generator name. " +
-                               "Please review the configuration of the " +
-                               "project.");
-                return false;
+            try {
+                i.delete();
+                deletedJobs.add(genjobn);
             }
-            else{
-                // check if the expanded name correspond to another job
-                // generator
-                TopLevelItem i = Jenkins.getInstance().getItem(expName);
-                if(i != null){
-                    if(JobGenerator.class.isInstance(i)){
-                        listener.error("Generated Project Name corresponds " +
-                                       "to a the Job Generator " +
-                                       i.getName() +
-                                       ". Generation has been aborted to " +
-                                       "prevent any loss of data.");
-                return false;
-                    }
-                }
+            catch (Exception e) {
+                LOGGER.severe(String.format("Error deleting job %s",
+                                            genjobn));
             }
-
+            LOGGER.info(String.format("Deleted job %s", genjobn));
             return true;
         }
     }
 
-    class ExpandVarsVisitor extends VisitorSupport {
-        private final List<ParametersAction> params;
+    static class ExpandVarsHandler implements ConfigExpander,
+                                       GeneratorVisitor.ElementHandler,
+                                       GeneratorVisitor.TextHandler {
+        private final Map<String, String> values;
         private final boolean disableJob;
-        private List<DownstreamGenerator> downGenerators;
+        private final GeneratorTemplate template;
+        private final ProjectReferences references;
+        // work done, reported in the generation metrics
+        private int nodes = 0;
+        private final int[] placeholders = {0};
 
-        public ExpandVarsVisitor(
+        public ExpandVarsHandler(
                 List<ParametersAction> params,
                 List<DownstreamGenerator> downGenerators,
-                boolean disableJob){
-            this.params = params;
-            this.downGenerators = downGenerators;
+                boolean disableJob,
+                GeneratorTemplate template){
+            this(GeneratorRun.getValues(params),
+                 new ProjectReferences(downGenerators), disableJob, template);
+        }
+
+        public ExpandVarsHandler(
+                Map<String, String> values,
+                ProjectReferences references,
+                boolean disableJob,
+                GeneratorTemplate template){
+            this.values = values;
+            this.references = references;
             this.disableJob = disableJob;
+            this.template = template;
         }
 
-        @Override
-        public void visit(Element node) {
-            String n = node.getName();
+        int getNodes() {
+            return this.nodes;
+        }
+
+        int getPlaceholders() {
+            return this.placeholders[0];
+        }
+
+        public String getForcedText(String n, String parent) {
+            this.nodes++;
             if(n.equals("triggerWithNoParameters")){
                 // force trigger without any parameter
-                node.setText("true");
+                return "true";
             }
-            else if(n.equals("disabled") &&
-                    node.getParent().getName().equals("project")){
-                if(this.disableJob){
-                    node.setText("true");
-                }
-                else{
-                    node.setText("false");
-                }
+            else if(n.equals("disabled") && "project".equals(parent)){
+                return this.disableJob ? "true" : "false";
             }
+            return null;
         }
 
-        @Override
-        public void visit(Text node){
-            String text = this.updateProjectReference(node);
-            node.setText(GeneratorRun.expand(text, this.params));
-        }
-
-        private String updateProjectReference(Text node){
-            String result = "";
-            for(String s: node.getText().split(",")){
-                s = Util.fixEmptyAndTrim(s);
-                if(s != null){
-                    for(DownstreamGenerator dg: this.downGenerators){
-                        if(!dg.processed && dg.job.getName().equals(s)){
-                            for(List<ParametersAction> lpa: dg.importParams){
-                                if(result.length() > 0){
-                                    result += ",";
-                                }
-                                if (JobGenerator.class.isInstance(dg.job)){
-                                    result += GeneratorRun.getExpandedJobName(
-                                                    (JobGenerator)dg.job, lpa);
-                                }
-                                else {
-                                    result += dg.job.getName();
-                                }
-                            }
-                            dg.processed = true;
-                            break;
-                        }
-                    }
-                }
-            }
-            if(result.length() > 0){
-                return result;
+        public String expand(String s, String element) {
+            this.nodes++;
+            String text = s;
+            if(ProjectReferences.isProjectList(element)){
+                text = this.references.rewrite(s);
             }
-            else{
-                return node.getText();
+            CompiledTemplate t = this.template.getCompiledText(text);
+            if(t != null){
+                return t.render(this.values, this.placeholders);
             }
+            return text;
         }
-    }
-
-    class GatherElementsToRemoveVisitor extends VisitorSupport {
-        public List<Element> toRemove = new ArrayList<Element>();
 
-        public GatherElementsToRemoveVisitor(){}
+        public void handle(Element node) {
+            Element parent = node.getParent();
+            String text = this.getForcedText(
+                    node.getName(), parent == null ? null : parent.getName());
+            if(text != null){
+                node.setText(text);
+            }
+        }
 
-        @Override
-        public void visit(Element node) {
-            String n = node.getName();
-            if(n.contains("GeneratorKeyValueParameterDefinition") ||
-               n.contains("GeneratorChoiceParameterDefinition") ||
-               n.contains("GeneratorCurrentParameters") ||
-               n.contains("PredefinedGeneratorParameters") ||
-               n.contains("CounterGeneratorParameterFactory") ||
-               n.contains("FileGeneratorParameterFactory")){
-                this.toRemove.add(node);
+        public void handle(Text node){
+            Element parent = node.getParent();
+            String text = this.expand(node.getText(),
+                                  parent == null ? null : parent.getName());
+            if(text != node.getText()){
+                node.setText(text);
             }
         }
     }
@@ -858,6 +1530,7 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
         private final BuildListener listener;
         public List<Element> toAdd;
         public List<Element> toRemove;
+        public int evaluated = 0;
         public EvaluateBuildersSingleVisitor(
                 Element root,
                 AbstractBuild<?, ?> build,
@@ -875,27 +1548,21 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
             if (n.equals("condition") && node.attribute("plugin") != null &&
                 GeneratorRun.isEvaluationSupported(node) &&
                 GeneratorRun.allParametersAreResolved(node)){
-                // convert this chunk of xml config to a file
-                InputStream is;
-                try {
-                    is = new ByteArrayInputStream(
-                                               node.asXML().getBytes("UTF-8"));
-                    XStream2 xs = new XStream2();
-                    RunCondition rc = (RunCondition) xs.fromXML(is);
-                    if(rc.runPerform(this.build, listener)){
-                        Element builder =
-                            (Element)this.root.selectSingleNode("buildStep");
-                        Element ne = builder.createCopy();
-                        ne.setName(ne.attributeValue("class"));
-                        ne.attribute("class").detach();
-                        this.toAdd.add(ne);
-                    }
-                    this.toRemove.add(this.root);
-                } catch (UnsupportedEncodingException e) {
-                } catch (FileNotFoundException e) {
-                } catch (IOException e) {
-                } catch (Exception e) {
+                Boolean run = RunConditionCache.evaluate(node, this.build,
+                                                         listener);
+                if(run == null){
+                    return;
+                }
+                this.evaluated++;
+                if(run){
+                    Element builder =
+                        (Element)this.root.selectSingleNode("buildStep");
+                    Element ne = builder.createCopy();
+                    ne.setName(ne.attributeValue("class"));
+                    ne.attribute("class").detach();
+                    this.toAdd.add(ne);
                 }
+                this.toRemove.add(this.root);
             }
         }
     }
@@ -906,6 +1573,7 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
         private final BuildListener listener;
         public List<Element> toAdd;
         public List<Element> toRemove;
+        public int evaluated = 0;
         public EvaluateBuildersMultiVisitor(
                 Element root,
                 AbstractBuild<?, ?> build,
@@ -923,30 +1591,25 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
             if (n.equals("runCondition") && node.attribute("plugin") != null &&
                 GeneratorRun.isEvaluationSupported(node) &&
                 GeneratorRun.allParametersAreResolved(node)){
-                try {
-                    InputStream is = new ByteArrayInputStream(
-                                               node.asXML().getBytes("UTF-8"));
-                    XStream2 xs = new XStream2();
-                    RunCondition rc = (RunCondition) xs.fromXML(is);
-                    if(rc.runPerform(this.build, listener)){
-                        Element broot = (Element)this.root.selectSingleNode(
-                                                      "conditionalbuilders");
-                        if (broot != null){
-                            List builders = broot.elements();
-                            for (Iterator i = builders.iterator();
-                                                                i.hasNext();) {
-                                Element b = (Element) i.next();
-                                Element ne = b.createCopy();
-                                this.toAdd.add(ne);
-                            }
+                Boolean run = RunConditionCache.evaluate(node, this.build,
+                                                         listener);
+                if(run == null){
+                    return;
+                }
+                this.evaluated++;
+                if(run){
+                    Element broot = (Element)this.root.selectSingleNode(
+                                                  "conditionalbuilders");
+                    if (broot != null){
+                        List builders = broot.elements();
+                        for (Iterator i = builders.iterator(); i.hasNext();) {
+                            Element b = (Element) i.next();
+                            Element ne = b.createCopy();
+                            this.toAdd.add(ne);
                         }
                     }
-                    this.toRemove.add(this.root);
-                } catch (UnsupportedEncodingException e) {
-                } catch (FileNotFoundException e) {
-                } catch (IOException e) {
-                } catch (Exception e) {
                 }
+                this.toRemove.add(this.root);
             }
         }
     }
@@ -958,6 +1621,7 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
         private final BuildListener listener;
         public List<Element> toAdd;
         public List<Element> toRemove;
+        public int evaluated = 0;
         public EvaluatePublishersVisitor(
                 Element root,
                 AbstractBuild<?, ?> build,
@@ -975,27 +1639,21 @@ public class GeneratorRun extends Build<JobGenerator, GeneratorRun> {
             if (n.equals("condition") && node.attribute("plugin") != null &&
                 GeneratorRun.isEvaluationSupported(node) &&
                 GeneratorRun.allParametersAreResolved(node)){
-                // convert this chunk of xml config to a file
-                InputStream is;
-                try {
-                    is = new ByteArrayInputStream(
-                                               node.asXML().getBytes("UTF-8"));
-                    XStream2 xs = new XStream2();
-                    RunCondition rc = (RunCondition) xs.fromXML(is);
-                    if(rc.runPerform(this.build, listener)){
-                        Element builder =
-                            (Element)this.root.selectSingleNode("publisher");
-                        Element ne = builder.createCopy();
-                        ne.setName(ne.attributeValue("class"));
-                        ne.attribute("class").detach();
-                        this.toAdd.add(ne);
-                    }
-                    this.toRemove.add(this.root);
-                } catch (UnsupportedEncodingException e) {
-                } catch (FileNotFoundException e) {
-                } catch (IOException e) {
-                } catch (Exception e) {
+                Boolean run = RunConditionCache.evaluate(node, this.build,
+                                                         listener);
+                if(run == null){
+                    return;
+                }
+                this.evaluated++;
+                if(run){
+                    Element publisher =
+                        (Element)this.root.selectSingleNode("publisher");
+                    Element ne = publisher.createCopy();
+                    ne.setName(ne.attributeValue("class"));
+                    ne.attribute("class").detach();
+                    this.toAdd.add(ne);
                 }
+                this.toRemove.add(this.root);
             }
         }
     }
@@ -0,0 +1,334 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+
+/**
+ * Pre-analysed configuration of a job generator.
+ *
+ * The template holds the job generator config.xml, the compiled texts
+ * containing generator parameters and knows which conditional steps need to
+ * be evaluated. When needed the document stripped from everything specific to
+ * the Job Generator is built once, so a generation only has to render the
+ * parameter values into a copy of it.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GeneratorTemplate {
+
+    static final String SINGLE_CONDITIONAL_BUILDER = "org.jenkinsci.plugins." +
+                    "conditionalbuildstep.singlestep.SingleConditionalBuilder";
+    static final String CONDITIONAL_BUILDER = "org.jenkinsci.plugins." +
+                    "conditionalbuildstep.ConditionalBuilder";
+    static final String FLEXIBLE_PUBLISHER = "org.jenkins__ci.plugins." +
+                    "flexible__publish.FlexiblePublisher";
+    static final String CONDITIONAL_PUBLISHER = "org.jenkins__ci.plugins." +
+                    "flexible__publish.ConditionalPublisher";
+    /**
+     * Elements specific to the Job Generator.
+     */
+    static final String[] GENERATOR_ELEMENTS = {
+        "GeneratorKeyValueParameterDefinition",
+        "GeneratorChoiceParameterDefinition",
+        "GeneratorCurrentParameters",
+        "PredefinedGeneratorParameters",
+        "CounterGeneratorParameterFactory",
+        "FileGeneratorParameterFactory"};
+    /**
+     * Elements removed from the generated job when they have no child
+     * element, in the order they must be checked.
+     */
+    static final String[] REMOVE_IF_NO_CHILD = {
+        "parameterDefinitions",
+        "hudson.model.ParametersDefinitionProperty",
+        "generatedJobName",
+        "generatedDisplayJobName",
+        "autoRunJob"};
+
+    private static final XMLInputFactory XML_INPUT_FACTORY =
+                                                  XMLInputFactory.newInstance();
+    private static final String REPORT_CDATA =
+                    "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    static {
+        XML_INPUT_FACTORY.setProperty(
+                  XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        // CDATA sections are not expanded, they must not be reported as
+        // regular characters
+        if(XML_INPUT_FACTORY.isPropertySupported(REPORT_CDATA)){
+            XML_INPUT_FACTORY.setProperty(REPORT_CDATA, true);
+        }
+    }
+
+    private final long lastModified;
+    private final long length;
+    private final byte[] bytes;
+    private final String digest;
+    private final Map<String, CompiledTemplate> texts;
+    private final boolean singleConditionalBuilders;
+    private final boolean conditionalBuilders;
+    private final boolean flexiblePublishers;
+    // built on first use only, streamed generations do not need it
+    private Document document;
+
+    private GeneratorTemplate(File file) throws IOException {
+        this(FileUtils.readFileToByteArray(file), file.lastModified(),
+             file.length(), file.toString());
+    }
+
+    private GeneratorTemplate(byte[] bytes, long lastModified, long length,
+                              String source) throws IOException {
+        this.lastModified = lastModified;
+        this.length = length;
+        this.bytes = bytes;
+        this.digest = Util.getDigestOf(this.openStream());
+        // Analyse what remains to do at generation time
+        Map<String, CompiledTemplate> t =
+                                       new HashMap<String, CompiledTemplate>();
+        boolean single = false;
+        boolean multi = false;
+        boolean flex = false;
+        try {
+            XMLStreamReader r = GeneratorTemplate.createXMLStreamReader(
+                                                         this.openStream());
+            StringBuilder text = new StringBuilder();
+            while(r.hasNext()){
+                int event = r.next();
+                if(event == XMLStreamConstants.CHARACTERS ||
+                   event == XMLStreamConstants.SPACE){
+                    text.append(r.getText());
+                    continue;
+                }
+                GeneratorTemplate.compileText(text, t);
+                if(event == XMLStreamConstants.START_ELEMENT){
+                    String n = r.getLocalName();
+                    if(n.equals(SINGLE_CONDITIONAL_BUILDER)){
+                        single = true;
+                    }
+                    else if(n.equals(CONDITIONAL_BUILDER)){
+                        multi = true;
+                    }
+                    else if(n.equals(FLEXIBLE_PUBLISHER)){
+                        flex = true;
+                    }
+                }
+            }
+            r.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read " + source, e);
+        }
+        this.texts = Collections.unmodifiableMap(t);
+        this.singleConditionalBuilders = single;
+        this.conditionalBuilders = multi;
+        this.flexiblePublishers = flex;
+    }
+
+    static GeneratorTemplate load(File file) throws IOException {
+        return new GeneratorTemplate(file);
+    }
+
+    /**
+     * @return the template of the passed configuration, which is not
+     *         copied.
+     */
+    static GeneratorTemplate load(byte[] bytes) throws IOException {
+        return new GeneratorTemplate(bytes, -1, bytes.length,
+                                     "job generator configuration");
+    }
+
+    static XMLStreamReader createXMLStreamReader(InputStream is)
+            throws XMLStreamException {
+        return XML_INPUT_FACTORY.createXMLStreamReader(is);
+    }
+
+    private static void compileText(StringBuilder text,
+                                    Map<String, CompiledTemplate> texts) {
+        if(text.length() == 0){
+            return;
+        }
+        String s = text.toString();
+        text.setLength(0);
+        if(s.contains("${") && !texts.containsKey(s)){
+            CompiledTemplate c = CompiledTemplate.compile(s);
+            if(c.hasPlaceholders()){
+                texts.put(s, c);
+            }
+        }
+    }
+
+    boolean isUpToDate(File file) {
+        return file.lastModified() == this.lastModified &&
+               file.length() == this.length;
+    }
+
+    /**
+     * @return the size in bytes of the job generator configuration.
+     */
+    public int getSize() {
+        return this.bytes.length;
+    }
+
+    /**
+     * @return the MD5 digest of the job generator configuration.
+     */
+    public String getDigest() {
+        return this.digest;
+    }
+
+    /**
+     * @return the raw job generator configuration, not to be modified.
+     */
+    byte[] getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return the raw job generator configuration.
+     */
+    public InputStream openStream() {
+        return new ByteArrayInputStream(this.bytes);
+    }
+
+    /**
+     * @return true if the generated job can be written while reading the
+     *         template, i.e. there is no conditional step to evaluate.
+     */
+    public boolean isStreamable() {
+        return !this.singleConditionalBuilders && !this.conditionalBuilders &&
+               !this.flexiblePublishers;
+    }
+
+    /**
+     * @return a copy of the template which can be freely modified.
+     */
+    public synchronized Document newDocument() throws IOException {
+        if(this.document == null){
+            this.document = this.parse();
+        }
+        return (Document) this.document.clone();
+    }
+
+    private Document parse() throws IOException {
+        SAXReader reader = new SAXReader();
+        Document doc;
+        try {
+            doc = reader.read(this.openStream());
+        } catch (DocumentException e) {
+            throw new IOException("Unable to parse job generator template", e);
+        }
+        Element root = doc.getRootElement();
+        root.setName("project");
+        if(root.attribute("plugin") != null){
+            root.remove(root.attribute("plugin"));
+        }
+        // Remove info specific to Job Generator
+        GeneratorVisitor v = new GeneratorVisitor();
+        final List<Element> toRemove = new ArrayList<Element>();
+        v.register(new GeneratorVisitor.ElementHandler() {
+            public void handle(Element node) {
+                if(GeneratorTemplate.isGeneratorElement(node.getName())){
+                    toRemove.add(node);
+                }
+            }
+        });
+        GeneratorVisitor.Collector candidates =
+                                            new GeneratorVisitor.Collector();
+        for(String name: REMOVE_IF_NO_CHILD){
+            v.register(name, candidates);
+        }
+        doc.accept(v);
+        for(Element e: toRemove){
+            e.detach();
+        }
+        // children are checked before their parents
+        List<Element> l = candidates.getElements();
+        for(int i = l.size() - 1; i >= 0; i--){
+            GeneratorTemplate.removeIfNoChild(l.get(i));
+        }
+        doc.normalize();
+        return doc;
+    }
+
+    /**
+     * @return the compiled text or null if the text does not contain any
+     *         generator parameter.
+     */
+    public CompiledTemplate getCompiledText(String text) {
+        CompiledTemplate t = this.texts.get(text);
+        if (t == null && text.contains("${")) {
+            // text which is not part of the template
+            t = CompiledTemplate.compile(text);
+        }
+        return t;
+    }
+
+    public boolean hasSingleConditionalBuilders() {
+        return this.singleConditionalBuilders;
+    }
+
+    public boolean hasConditionalBuilders() {
+        return this.conditionalBuilders;
+    }
+
+    public boolean hasFlexiblePublishers() {
+        return this.flexiblePublishers;
+    }
+
+    static void removeIfNoChild(Element node) {
+        if(node.elements().isEmpty()){
+            node.detach();
+        }
+    }
+
+    static boolean isGeneratorElement(String name) {
+        for(String n: GENERATOR_ELEMENTS){
+            if(name.contains(n)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of the templates of all the job generators.
+ *
+ * An entry is reloaded as soon as the config.xml of its job generator has
+ * been modified.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class GeneratorTemplateCache {
+
+    /**
+     * Maximum number of templates kept in memory.
+     */
+    public static int SIZE = Integer.getInteger(
+                           GeneratorTemplateCache.class.getName() + ".size", 64);
+
+    private static final Map<String, GeneratorTemplate> CACHE =
+        new LinkedHashMap<String, GeneratorTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, GeneratorTemplate> eldest) {
+                return size() > SIZE;
+            }
+        };
+
+    private GeneratorTemplateCache() {
+    }
+
+    public static GeneratorTemplate get(JobGenerator job) throws IOException {
+        String key = job.getFullName();
+        File file = job.getConfigFile().getFile();
+        synchronized (CACHE) {
+            GeneratorTemplate t = CACHE.get(key);
+            if (t != null && t.isUpToDate(file)) {
+                return t;
+            }
+        }
+        // parse outside of the lock, concurrent misses are harmless
+        GeneratorTemplate t = GeneratorTemplate.load(file);
+        synchronized (CACHE) {
+            CACHE.put(key, t);
+        }
+        return t;
+    }
+
+    public static void invalidate(JobGenerator job) {
+        synchronized (CACHE) {
+            CACHE.remove(job.getFullName());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dom4j.Element;
+import org.dom4j.Text;
+import org.dom4j.VisitorSupport;
+
+/**
+ * Visitor dispatching the nodes of a document to the registered handlers so
+ * that all the transformations of a document are done in a single walk.
+ *
+ * Element handlers are registered either for a given element name or for
+ * all the elements. An element is dispatched before its content, so an
+ * handler modifying the content of an element sees the new content visited.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class GeneratorVisitor extends VisitorSupport {
+
+    public interface ElementHandler {
+        void handle(Element node);
+    }
+
+    public interface TextHandler {
+        void handle(Text node);
+    }
+
+    private final Map<String, List<ElementHandler>> handlers =
+                                  new HashMap<String, List<ElementHandler>>();
+    private final List<ElementHandler> elementHandlers =
+                                              new ArrayList<ElementHandler>();
+    private final List<TextHandler> textHandlers = new ArrayList<TextHandler>();
+
+    /**
+     * Registers an handler for the elements with the given name.
+     */
+    public GeneratorVisitor register(String name, ElementHandler h) {
+        List<ElementHandler> l = this.handlers.get(name);
+        if (l == null) {
+            l = new ArrayList<ElementHandler>();
+            this.handlers.put(name, l);
+        }
+        l.add(h);
+        return this;
+    }
+
+    /**
+     * Registers an handler for all the elements.
+     */
+    public GeneratorVisitor register(ElementHandler h) {
+        this.elementHandlers.add(h);
+        return this;
+    }
+
+    public GeneratorVisitor register(TextHandler h) {
+        this.textHandlers.add(h);
+        return this;
+    }
+
+    @Override
+    public void visit(Element node) {
+        List<ElementHandler> l = this.handlers.get(node.getName());
+        if (l != null) {
+            for (ElementHandler h : l) {
+                h.handle(node);
+            }
+        }
+        for (ElementHandler h : this.elementHandlers) {
+            h.handle(node);
+        }
+    }
+
+    @Override
+    public void visit(Text node) {
+        for (TextHandler h : this.textHandlers) {
+            h.handle(node);
+        }
+    }
+
+    /**
+     * Handler collecting the visited elements in document order.
+     */
+    public static class Collector implements ElementHandler {
+        private final List<Element> elements = new ArrayList<Element>();
+
+        public void handle(Element node) {
+            this.elements.add(node);
+        }
+
+        public List<Element> getElements() {
+            return this.elements;
+        }
+
+        public Element getFirst() {
+            return this.elements.isEmpty() ? null : this.elements.get(0);
+        }
+    }
+}
@@ -29,10 +29,10 @@ import hudson.Launcher;
 import hudson.Util;
 import hudson.model.*;
 import hudson.model.Descriptor.FormException;
-import hudson.model.ParameterDefinition;
 import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Queue.FlyweightTask;
 import hudson.model.labels.LabelAtom;
+import hudson.model.listeners.ItemListener;
 import hudson.scm.PollingResult;
 import hudson.triggers.SCMTrigger.SCMTriggerCause;
 import hudson.triggers.TimerTrigger.TimerTriggerCause;
@@ -42,9 +42,11 @@ import hudson.util.FormValidation;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletException;
 
+import jenkins.model.Jenkins;
 import jenkins.util.TimeDuration;
 
 import net.sf.json.JSONObject;
@@ -54,8 +56,6 @@ import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
-import com.google.common.collect.Lists;
-
 import org.jenkinsci.plugins.jobgenerator.parameters.*;
 
 /**
@@ -69,8 +69,18 @@ public class JobGenerator extends Project<JobGenerator, GeneratorRun>
     private transient boolean delete = false;
     private transient boolean processThisJobOnly = false;
     private transient boolean disableJobs = false;
+    private transient boolean incremental = false;
+    private transient boolean deleteVanished = false;
+    private transient boolean plan = false;
     private transient boolean initiator = false;
     private transient String customWorkspace = null;
+    private transient GeneratedJobsIndex generatedJobsIndex = null;
+    private transient volatile GeneratorParametersDefinitionProperty
+                                                          parametersView = null;
+    private transient volatile TopMost topMost = null;
+    // incremented each time the resolved top most projects may be stale
+    private static final AtomicInteger TOPMOST_GENERATION =
+                                                           new AtomicInteger();
     private String generatedJobName = "";
     private String generatedDisplayJobName = "";
     private boolean autoRunJob = false;
@@ -89,6 +99,22 @@ public class JobGenerator extends Project<JobGenerator, GeneratorRun>
         super.doBuild(req, rsp, delay);
     }
 
+    /**
+     * Generates one job per posted parameter set, see
+     * {@link GeneratorParametersDefinitionProperty#generateBatch}.
+     */
+    public void doGenerateBatch(StaplerRequest req, StaplerResponse rsp)
+            throws IOException, ServletException {
+        ParametersDefinitionProperty pp =
+                        this.getProperty(ParametersDefinitionProperty.class);
+        if(pp == null){
+            rsp.sendError(StaplerResponse.SC_BAD_REQUEST,
+                          "This job generator has no generator parameter");
+            return;
+        }
+        ((GeneratorParametersDefinitionProperty) pp).generateBatch(req, rsp);
+    }
+
     @Override
     public boolean isParameterized() {
         // not working for now since doBuild method of jenkins core does not
@@ -98,7 +124,8 @@ public class JobGenerator extends Project<JobGenerator, GeneratorRun>
 
     /**
      * Returns plugin own parameter definition property which wraps the real
-     * one.
+     * one. The wrapper is kept until this project or its top most upstream
+     * project is reconfigured.
      */
     @Override
     public <T extends JobProperty> T getProperty(Class<T> clazz) {
@@ -107,41 +134,17 @@ public class JobGenerator extends Project<JobGenerator, GeneratorRun>
             ParametersDefinitionProperty topmost =
                     (ParametersDefinitionProperty)
                                   this.getTopMostParameterDefinitionProperty();
-            if(res != null){
+            ParametersDefinitionProperty property =
+                                            (ParametersDefinitionProperty) res;
+            GeneratorParametersDefinitionProperty view = this.parametersView;
+            if(view == null || !view.isViewOf(property, topmost)){
                 // wrap parameter definitions and merge with top most project
                 // parameters
-                GeneratorParametersDefinitionProperty newres =
-                    new GeneratorParametersDefinitionProperty(
-                                           (ParametersDefinitionProperty) res,
-                                           this);
-                if(topmost != null){
-                    List<ParameterDefinition> lpd =
-                                             topmost.getParameterDefinitions();
-                    for(ParameterDefinition pd: Lists.reverse(lpd)) {
-                        newres.getParameterDefinitions().add(0, pd);
-                    }
-                    newres.addGlobalParameters(lpd);
-                    lpd = ((ParametersDefinitionProperty)res).
-                                                     getParameterDefinitions();
-                    newres.addLocalParameters(lpd);
-                }
-                else {
-                    List<ParameterDefinition> lpd =
-                        ((ParametersDefinitionProperty)res).
-                                                     getParameterDefinitions();
-                    newres.addGlobalParameters(lpd);
-                }
-                res = (T) newres;
-            }
-            else if(topmost != null){
-                List<ParameterDefinition> lpd =
-                                             topmost.getParameterDefinitions();
-                GeneratorParametersDefinitionProperty newres =
-                    new GeneratorParametersDefinitionProperty(topmost, this);
-                newres.addGlobalParameters(lpd);
-                newres.setOwner2(this);
-                res = (T) newres;
+                view = GeneratorParametersDefinitionProperty.create(
+                                                      this, property, topmost);
+                this.parametersView = view;
             }
+            res = (T) view;
         }
         return res;
     }
@@ -225,18 +228,91 @@ public class JobGenerator extends Project<JobGenerator, GeneratorRun>
         return GeneratorRun.class;
     }
 
+    /**
+     * Returns the pre-analysed template of this job generator, it is shared
+     * by all the generations until the configuration is modified.
+     */
+    public GeneratorTemplate getGeneratorTemplate() throws IOException {
+        return GeneratorTemplateCache.get(this);
+    }
+
+    /**
+     * Returns the index of the jobs generated by this job generator.
+     */
+    public synchronized GeneratedJobsIndex getGeneratedJobsIndex() {
+        if(this.generatedJobsIndex == null){
+            this.generatedJobsIndex = GeneratedJobsIndex.load(this);
+        }
+        return this.generatedJobsIndex;
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        super.save();
+        GeneratorTemplateCache.invalidate(this);
+    }
+
     @SuppressWarnings("rawtypes")
     public JobProperty getTopMostParameterDefinitionProperty(){
+        AbstractProject topmost = this.getTopMostProject();
+        if(topmost != this){
+            return topmost.getProperty(ParametersDefinitionProperty.class);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first upstream project without upstream project, the
+     * result is kept until the dependency graph is rebuilt or an item is
+     * renamed or deleted.
+     */
+    @SuppressWarnings("rawtypes")
+    public AbstractProject getTopMostProject(){
+        DependencyGraph graph = Jenkins.getInstance().getDependencyGraph();
+        int generation = TOPMOST_GENERATION.get();
+        TopMost t = this.topMost;
+        if(t != null && t.graph == graph && t.generation == generation){
+            return t.project;
+        }
         AbstractProject topmost = this;
         List<AbstractProject> lup = topmost.getUpstreamProjects();
         while(lup.isEmpty() == false){
             topmost = lup.get(0);
             lup = topmost.getUpstreamProjects();
         }
-        if(topmost != this){
-            return topmost.getProperty(ParametersDefinitionProperty.class);
+        this.topMost = new TopMost(graph, generation, topmost);
+        return topmost;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final class TopMost {
+        private final DependencyGraph graph;
+        private final int generation;
+        private final AbstractProject project;
+
+        private TopMost(DependencyGraph graph, int generation,
+                        AbstractProject project) {
+            this.graph = graph;
+            this.generation = generation;
+            this.project = project;
+        }
+    }
+
+    /**
+     * Invalidates the resolved top most projects when an item is renamed or
+     * deleted.
+     */
+    @Extension
+    public static final class TopMostInvalidator extends ItemListener {
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            TOPMOST_GENERATION.incrementAndGet();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            TOPMOST_GENERATION.incrementAndGet();
         }
-        return null;
     }
 
     public boolean isInitiator(){
@@ -287,6 +363,24 @@ public class JobGenerator extends Project<JobGenerator, GeneratorRun>
     public void setDisableJobs(boolean check){
         this.disableJobs = check;
     }
+    public boolean getIncremental(){
+        return this.incremental;
+    }
+    public void setIncremental(boolean check){
+        this.incremental = check;
+    }
+    public boolean getDeleteVanished(){
+        return this.deleteVanished;
+    }
+    public void setDeleteVanished(boolean check){
+        this.deleteVanished = check;
+    }
+    public boolean getPlan(){
+        return this.plan;
+    }
+    public void setPlan(boolean check){
+        this.plan = check;
+    }
     public boolean getDelete(){
         return this.delete;
     }
@@ -298,6 +392,8 @@ public class JobGenerator extends Project<JobGenerator, GeneratorRun>
         p.setDelete(this.getDelete());
         p.setProcessThisJobOnly(this.getProcessThisJobOnly());
         p.setDisableJobs(this.getDisableJobs());
+        p.setIncremental(this.getIncremental());
+        p.setDeleteVanished(this.getDeleteVanished());
     }
 
     public static class JobGeneratorDescriptor
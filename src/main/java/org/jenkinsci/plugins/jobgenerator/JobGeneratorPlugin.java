@@ -31,5 +31,15 @@ import hudson.Plugin;
  */
 public class JobGeneratorPlugin extends Plugin {
 
-
+    @Override
+    public void start() throws Exception {
+        GenerationStats.get().register();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        GenerationStats.get().unregister();
+        RendererPool.shutdown();
+        GenerationEngine.shutdown();
+    }
 }
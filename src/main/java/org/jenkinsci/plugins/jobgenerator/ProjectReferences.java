@@ -0,0 +1,138 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.model.AbstractProject;
+import hudson.model.ParametersAction;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.plugins.jobgenerator.GeneratorRun.DownstreamGenerator;
+
+/**
+ * References to the downstream generators of a generated job, indexed by
+ * job generator name.
+ *
+ * A reference is replaced by the names of the jobs generated by the
+ * downstream generator. A downstream generator triggered several times is
+ * listed once per trigger and each of its references replaces the next
+ * occurrence. The names are resolved when the references are built so they
+ * can be rewritten out of the Jenkins JVM.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+final class ProjectReferences implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Elements holding comma separated lists of projects.
+     */
+    static final String[] PROJECT_LISTS = {
+        "projects",
+        "childProjects"};
+
+    // names of the generated jobs of each trigger by job generator name
+    private final Map<String, LinkedList<List<String>>> generators =
+                         new HashMap<String, LinkedList<List<String>>>();
+
+    ProjectReferences(List<DownstreamGenerator> downstream) {
+        for(DownstreamGenerator dg: downstream){
+            AbstractProject p = dg.getJob();
+            LinkedList<List<String>> l = this.generators.get(p.getName());
+            if(l == null){
+                l = new LinkedList<List<String>>();
+                this.generators.put(p.getName(), l);
+            }
+            List<String> names = new ArrayList<String>(
+                                                   dg.getImportParams().size());
+            for(List<ParametersAction> lpa: dg.getImportParams()){
+                if(JobGenerator.class.isInstance(p)){
+                    names.add(GeneratorRun.getExpandedJobName(
+                                                     (JobGenerator) p, lpa));
+                }
+                else{
+                    names.add(p.getName());
+                }
+            }
+            l.add(names);
+        }
+    }
+
+    static boolean isProjectList(String element) {
+        if(element == null){
+            return false;
+        }
+        for(String n: PROJECT_LISTS){
+            if(n.equals(element)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the list of the jobs generated by the downstream generators
+     *         referred to by the passed project list, or the passed text if
+     *         it does not refer to any of them.
+     */
+    String rewrite(String text) {
+        if(this.generators.isEmpty()){
+            return text;
+        }
+        StringBuilder result = null;
+        int start = 0;
+        while(start <= text.length()){
+            int end = text.indexOf(',', start);
+            if(end < 0){
+                end = text.length();
+            }
+            String s = text.substring(start, end).trim();
+            start = end + 1;
+            LinkedList<List<String>> l = this.generators.get(s);
+            if(l == null || l.isEmpty()){
+                continue;
+            }
+            if(result == null){
+                result = new StringBuilder(text.length());
+            }
+            for(String name: l.removeFirst()){
+                if(result.length() > 0){
+                    result.append(',');
+                }
+                result.append(name);
+            }
+        }
+        if(result == null || result.length() == 0){
+            return text;
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.remoting.Callable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jenkinsci.plugins.jobgenerator.GeneratorRun.ExpandVarsHandler;
+
+/**
+ * Everything needed to render the configuration of a generated job from a
+ * streamable template, without access to Jenkins.
+ *
+ * A request is rendered in the Jenkins JVM or sent to a renderer JVM of the
+ * {@link RendererPool}. Renderer JVMs keep the templates they have compiled
+ * so the template is only sent when the renderer does not know it yet.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+final class RenderRequest implements Callable<RenderRequest.Rendered,
+                                              IOException> {
+
+    private static final long serialVersionUID = 1L;
+    // templates compiled by a renderer JVM, by digest
+    private static final int CACHE_SIZE = 32;
+    private static final Map<String, GeneratorTemplate> TEMPLATES =
+            new LinkedHashMap<String, GeneratorTemplate>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, GeneratorTemplate> eldest) {
+                    return this.size() > CACHE_SIZE;
+                }
+            };
+
+    private final String digest;
+    // only sent when the renderer does not know the template
+    private transient GeneratorTemplate template;
+    private byte[] bytes;
+    private final Map<String, String> values;
+    private final ProjectReferences references;
+    private final boolean disableJob;
+    private final String displayName;
+
+    RenderRequest(GeneratorTemplate template, Map<String, String> values,
+                  ProjectReferences references, boolean disableJob,
+                  String displayName) {
+        this.digest = template.getDigest();
+        this.template = template;
+        this.values = values;
+        this.references = references;
+        this.disableJob = disableJob;
+        this.displayName = displayName;
+    }
+
+    String getDigest() {
+        return this.digest;
+    }
+
+    /**
+     * Sends the template along with the request or not.
+     */
+    void setTemplateSent(boolean sent) {
+        this.bytes = sent ? this.template.getBytes() : null;
+    }
+
+    /**
+     * Renders the configuration into the passed stream.
+     *
+     * @return the work done, without the configuration.
+     */
+    Rendered render(GeneratorTemplate t, OutputStream out)
+            throws IOException {
+        ExpandVarsHandler expander = new ExpandVarsHandler(this.values,
+                this.references, this.disableJob, t);
+        new StreamingConfigWriter(t, expander, this.displayName).write(out);
+        return new Rendered(null, expander.getNodes(),
+                            expander.getPlaceholders());
+    }
+
+    /**
+     * Renders the configuration in a renderer JVM.
+     *
+     * @return null if the template has not been sent and is unknown.
+     */
+    public Rendered call() throws IOException {
+        GeneratorTemplate t;
+        synchronized(TEMPLATES){
+            t = TEMPLATES.get(this.digest);
+            if(t == null && this.bytes != null){
+                t = GeneratorTemplate.load(this.bytes);
+                TEMPLATES.put(this.digest, t);
+            }
+        }
+        if(t == null){
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                                                             t.getSize() * 2);
+        Rendered r = this.render(t, out);
+        return new Rendered(out.toByteArray(), r.nodes, r.placeholders);
+    }
+
+    /**
+     * Configuration rendered by a request and the work it took.
+     */
+    static final class Rendered implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] config;
+        private final int nodes;
+        private final int placeholders;
+
+        private Rendered(byte[] config, int nodes, int placeholders) {
+            this.config = config;
+            this.nodes = nodes;
+            this.placeholders = placeholders;
+        }
+
+        /**
+         * @return the configuration, null if it has been rendered into a
+         *         stream.
+         */
+        byte[] getConfig() {
+            return this.config;
+        }
+
+        int getNodes() {
+            return this.nodes;
+        }
+
+        int getPlaceholders() {
+            return this.placeholders;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.FilePath;
+import hudson.remoting.Channel;
+import hudson.remoting.ChannelClosedException;
+import hudson.remoting.RequestAbortedException;
+import hudson.slaves.Channels;
+import hudson.util.ClasspathBuilder;
+import hudson.util.LogTaskListener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Local JVMs rendering the configurations of the generated jobs.
+ *
+ * Rendering a streamable template only depends on the template and on the
+ * parameter values, so it can be moved out of the Jenkins JVM. The
+ * renderers are started on first use and reused, each one rendering one
+ * job at a time. The Jenkins JVM then only creates and updates the jobs.
+ * Whenever no renderer is available the job is rendered locally.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class RendererPool {
+
+    private static final Logger LOGGER = Logger.getLogger(
+                                                RendererPool.class.getName());
+
+    /**
+     * Number of renderer JVMs, set with the
+     * org.jenkinsci.plugins.jobgenerator.RendererPool.workers system
+     * property. 0 renders the jobs in the Jenkins JVM.
+     */
+    public static int WORKERS = Integer.getInteger(
+                                RendererPool.class.getName() + ".workers", 0);
+
+    private static RendererPool instance;
+
+    private final BlockingQueue<Renderer> idle =
+                                          new LinkedBlockingQueue<Renderer>();
+    // renderers started and not closed
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger count = new AtomicInteger();
+    // set once a renderer cannot be started, the pool is not used anymore
+    private volatile boolean broken = false;
+
+    private RendererPool() {
+    }
+
+    static boolean isEnabled() {
+        return WORKERS > 0;
+    }
+
+    static synchronized RendererPool get() {
+        if(instance == null){
+            instance = new RendererPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the renderer JVMs.
+     */
+    static synchronized void shutdown() {
+        if(instance != null){
+            instance.broken = true;
+            Renderer r;
+            while((r = instance.idle.poll()) != null){
+                r.close();
+            }
+            instance = null;
+        }
+    }
+
+    /**
+     * @return the rendered configuration or null if no renderer is
+     *         available, the request is then to be rendered locally.
+     * @throws IOException if the configuration cannot be rendered
+     */
+    RenderRequest.Rendered render(RenderRequest request)
+            throws IOException, InterruptedException {
+        Renderer r = this.acquire();
+        if(r == null){
+            return null;
+        }
+        boolean alive = false;
+        try {
+            RenderRequest.Rendered result = r.render(request);
+            alive = true;
+            return result;
+        } catch (ChannelClosedException e) {
+            LOGGER.log(Level.WARNING, "Renderer " + r + " is gone", e);
+            return null;
+        } catch (RequestAbortedException e) {
+            LOGGER.log(Level.WARNING, "Renderer " + r + " is gone", e);
+            return null;
+        } catch (IOException e) {
+            // the renderer is fine, the template cannot be rendered
+            alive = true;
+            throw e;
+        } finally {
+            if(alive && !this.broken){
+                this.idle.add(r);
+            }
+            else{
+                r.close();
+                this.started.decrementAndGet();
+            }
+        }
+    }
+
+    private Renderer acquire() throws InterruptedException {
+        while(!this.broken){
+            Renderer r = this.idle.poll();
+            if(r != null){
+                return r;
+            }
+            if(this.started.incrementAndGet() <= WORKERS){
+                try {
+                    return new Renderer(this.count.incrementAndGet());
+                } catch (IOException e) {
+                    this.started.decrementAndGet();
+                    this.broken = true;
+                    LOGGER.log(Level.WARNING, "Unable to start a renderer " +
+                               "JVM, jobs are rendered in the Jenkins JVM",
+                               e);
+                    return null;
+                }
+            }
+            this.started.decrementAndGet();
+            r = this.idle.poll(1, TimeUnit.SECONDS);
+            if(r != null){
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A renderer JVM and the templates it knows.
+     */
+    private static final class Renderer {
+        private final String name;
+        private final Channel channel;
+        private final Set<String> templates = new HashSet<String>();
+
+        private Renderer(int n) throws IOException {
+            this.name = "Job Generator renderer #" + n;
+            this.channel = Channels.newJVM(this.name,
+                    new LogTaskListener(LOGGER, Level.FINE),
+                    new FilePath(Jenkins.getInstance().getRootDir()),
+                    new ClasspathBuilder(), new HashMap<String, String>());
+            LOGGER.info("Started " + this.name);
+        }
+
+        private RenderRequest.Rendered render(RenderRequest request)
+                throws IOException, InterruptedException {
+            request.setTemplateSent(
+                               !this.templates.contains(request.getDigest()));
+            RenderRequest.Rendered r = this.channel.call(request);
+            if(r == null){
+                // the renderer dropped the template from its cache
+                request.setTemplateSent(true);
+                r = this.channel.call(request);
+            }
+            this.templates.add(request.getDigest());
+            return r;
+        }
+
+        private void close() {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to close " + this.name, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+    }
+}
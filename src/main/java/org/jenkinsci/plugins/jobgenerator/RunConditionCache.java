@@ -0,0 +1,107 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.util.XStream2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.dom4j.Element;
+import org.jenkins_ci.plugins.run_condition.RunCondition;
+
+/**
+ * Run conditions of conditional steps deserialized once.
+ *
+ * Conditions are read with a single XStream instance, which is thread safe
+ * once configured, and are kept in a least recently used cache keyed by
+ * their XML once parameters are expanded, so generations from the same
+ * template do not deserialize them again.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class RunConditionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(
+                                            RunConditionCache.class.getName());
+
+    /**
+     * Maximum number of cached conditions, set with the
+     * org.jenkinsci.plugins.jobgenerator.RunConditionCache.size system
+     * property.
+     */
+    public static int SIZE = Integer.getInteger(
+                             RunConditionCache.class.getName() + ".size", 256);
+
+    private static final XStream2 XSTREAM = new XStream2();
+    private static final Map<String, RunCondition> CACHE =
+            new LinkedHashMap<String, RunCondition>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, RunCondition> eldest) {
+                    return this.size() > SIZE;
+                }
+            };
+
+    private RunConditionCache() {
+    }
+
+    /**
+     * @return the run condition serialized in the passed element.
+     */
+    public static RunCondition get(Element node) {
+        String xml = node.asXML();
+        RunCondition rc;
+        synchronized(CACHE){
+            rc = CACHE.get(xml);
+        }
+        if(rc == null){
+            rc = (RunCondition) XSTREAM.fromXML(xml);
+            synchronized(CACHE){
+                CACHE.put(xml, rc);
+            }
+        }
+        return rc;
+    }
+
+    /**
+     * Evaluates the run condition serialized in the passed element.
+     *
+     * @return null if the condition cannot be evaluated.
+     */
+    public static Boolean evaluate(Element node, AbstractBuild<?, ?> build,
+                                   BuildListener listener) {
+        try {
+            return RunConditionCache.get(node).runPerform(build, listener);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Unable to evaluate condition", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes the configuration of a generated job while reading the template of
+ * its job generator.
+ *
+ * This is equivalent to the document based generation for templates without
+ * any conditional step to evaluate: texts are expanded, elements specific to
+ * the Job Generator are dropped and the display name is set, in a single
+ * pass and without building the document in memory. Only the elements which
+ * may be removed once their children have been processed are buffered.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public final class StreamingConfigWriter {
+
+    /**
+     * Set the org.jenkinsci.plugins.jobgenerator.StreamingConfigWriter.disabled
+     * system property to always generate jobs from a document.
+     */
+    public static boolean ENABLED = !Boolean.getBoolean(
+                        StreamingConfigWriter.class.getName() + ".disabled");
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY =
+                                                 XMLOutputFactory.newInstance();
+
+    private final GeneratorTemplate template;
+    private final ConfigExpander expander;
+    private final String displayName;
+
+    private XMLStreamWriter writer;
+    // innermost element which output is deferred
+    private Pending pending;
+
+    public StreamingConfigWriter(GeneratorTemplate template,
+                                 ConfigExpander expander,
+                                 String displayName) {
+        this.template = template;
+        this.expander = expander;
+        this.displayName = displayName;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        try {
+            this.doWrite(out);
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to generate job configuration", e);
+        }
+    }
+
+    private void doWrite(OutputStream out) throws XMLStreamException {
+        XMLStreamReader r = GeneratorTemplate.createXMLStreamReader(
+                                                 this.template.openStream());
+        this.writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        this.pending = null;
+        this.writer.writeStartDocument("UTF-8", "1.0");
+        List<String> path = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        boolean displayNameDone = this.displayName.isEmpty();
+        // depth in the skipped element, 0 if nothing is skipped
+        int skip = 0;
+        boolean skipWritesEnd = false;
+        while(r.hasNext()){
+            int event = r.next();
+            if(skip > 0){
+                if(event == XMLStreamConstants.START_ELEMENT){
+                    skip++;
+                }
+                else if(event == XMLStreamConstants.END_ELEMENT){
+                    skip--;
+                    if(skip == 0 && skipWritesEnd){
+                        path.remove(path.size() - 1);
+                        this.endElement();
+                    }
+                }
+                continue;
+            }
+            if(event == XMLStreamConstants.CHARACTERS ||
+               event == XMLStreamConstants.SPACE){
+                text.append(r.getText());
+                continue;
+            }
+            this.flushText(text, path);
+            switch(event){
+            case XMLStreamConstants.START_ELEMENT:
+                String n = r.getLocalName();
+                String parent = null;
+                if(path.isEmpty()){
+                    n = "project";
+                }
+                else{
+                    parent = path.get(path.size() - 1);
+                    if(GeneratorTemplate.isGeneratorElement(n)){
+                        // Remove info specific to Job Generator
+                        skip = 1;
+                        skipWritesEnd = false;
+                        break;
+                    }
+                }
+                this.startElement(n, r, parent == null);
+                path.add(n);
+                String forced = this.expander.getForcedText(n, parent);
+                if(forced == null && !displayNameDone &&
+                   n.equals("displayName")){
+                    forced = this.displayName;
+                    displayNameDone = true;
+                }
+                if(forced != null){
+                    this.characters(this.expander.expand(forced, n));
+                    skip = 1;
+                    skipWritesEnd = true;
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if(path.size() == 1 && !displayNameDone){
+                    this.startElement("displayName", null, false);
+                    this.characters(this.expander.expand(this.displayName,
+                                                         "displayName"));
+                    this.endElement();
+                    displayNameDone = true;
+                }
+                path.remove(path.size() - 1);
+                this.endElement();
+                break;
+            case XMLStreamConstants.CDATA:
+                this.content(new Chunk(event, r.getText(), null));
+                break;
+            case XMLStreamConstants.COMMENT:
+                this.content(new Chunk(event, r.getText(), null));
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                this.content(new Chunk(event, r.getPIData(),
+                                       r.getPITarget()));
+                break;
+            default:
+                break;
+            }
+        }
+        r.close();
+        this.writer.writeEndDocument();
+        this.writer.flush();
+        this.writer.close();
+    }
+
+    private void flushText(StringBuilder text, List<String> path)
+            throws XMLStreamException {
+        if(text.length() > 0){
+            String element = path.isEmpty() ? null :
+                                              path.get(path.size() - 1);
+            this.characters(this.expander.expand(text.toString(), element));
+            text.setLength(0);
+        }
+    }
+
+    private void startElement(String name, XMLStreamReader r, boolean root)
+            throws XMLStreamException {
+        int count = r == null ? 0 : r.getAttributeCount();
+        String[] attributes = new String[count * 2];
+        int n = 0;
+        for(int i = 0; i < count; i++){
+            String a = r.getAttributeLocalName(i);
+            if(root && a.equals("plugin")){
+                continue;
+            }
+            attributes[n++] = a;
+            attributes[n++] = r.getAttributeValue(i);
+        }
+        boolean removable = StreamingConfigWriter.isRemovable(name);
+        if(this.pending != null || removable){
+            Pending p = new Pending(name, attributes, n, removable);
+            p.parent = this.pending;
+            this.pending = p;
+        }
+        else{
+            this.writer.writeStartElement(name);
+            for(int i = 0; i < n; i += 2){
+                this.writer.writeAttribute(attributes[i], attributes[i + 1]);
+            }
+        }
+    }
+
+    private void endElement() throws XMLStreamException {
+        Pending p = this.pending;
+        if(p == null){
+            this.writer.writeEndElement();
+            return;
+        }
+        this.pending = p.parent;
+        if(p.removable && !p.hasChild){
+            // dropped like an element without child in the document
+            return;
+        }
+        if(p.parent != null){
+            p.parent.content.add(p);
+            p.parent.hasChild = true;
+        }
+        else{
+            this.replay(p);
+        }
+    }
+
+    private void characters(String s) throws XMLStreamException {
+        if(this.pending != null){
+            this.pending.content.add(s);
+        }
+        else{
+            this.writer.writeCharacters(s);
+        }
+    }
+
+    private void content(Chunk c) throws XMLStreamException {
+        if(this.pending != null){
+            this.pending.content.add(c);
+        }
+        else{
+            this.write(c);
+        }
+    }
+
+    private void replay(Pending p) throws XMLStreamException {
+        this.writer.writeStartElement(p.name);
+        for(int i = 0; i < p.count; i += 2){
+            this.writer.writeAttribute(p.attributes[i], p.attributes[i + 1]);
+        }
+        for(Object o: p.content){
+            if(o instanceof String){
+                this.writer.writeCharacters((String) o);
+            }
+            else if(o instanceof Pending){
+                this.replay((Pending) o);
+            }
+            else{
+                this.write((Chunk) o);
+            }
+        }
+        this.writer.writeEndElement();
+    }
+
+    private void write(Chunk c) throws XMLStreamException {
+        if(c.type == XMLStreamConstants.CDATA){
+            this.writer.writeCData(c.text);
+        }
+        else if(c.type == XMLStreamConstants.COMMENT){
+            this.writer.writeComment(c.text);
+        }
+        else{
+            this.writer.writeProcessingInstruction(c.target, c.text);
+        }
+    }
+
+    private static boolean isRemovable(String name) {
+        for(String n: GeneratorTemplate.REMOVE_IF_NO_CHILD){
+            if(n.equals(name)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Pending {
+        private final String name;
+        private final String[] attributes;
+        private final int count;
+        private final boolean removable;
+        private final List<Object> content = new ArrayList<Object>();
+        private boolean hasChild = false;
+        private Pending parent;
+
+        private Pending(String name, String[] attributes, int count,
+                        boolean removable) {
+            this.name = name;
+            this.attributes = attributes;
+            this.count = count;
+            this.removable = removable;
+        }
+    }
+
+    private static final class Chunk {
+        private final int type;
+        private final String text;
+        private final String target;
+
+        private Chunk(int type, String text, String target) {
+            this.type = type;
+            this.text = text;
+            this.target = target;
+        }
+    }
+}
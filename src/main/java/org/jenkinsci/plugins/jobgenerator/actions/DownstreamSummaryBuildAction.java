@@ -0,0 +1,83 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator.actions;
+
+import java.util.Map;
+
+import hudson.model.Action;
+
+/**
+ * Compact record of the downstream projects triggered by a run.
+ *
+ * Only the number of invocations of each downstream project is kept, along
+ * with a digest of the names of the jobs they generate, so builds with a
+ * large fan-out stay small on disk and in memory.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class DownstreamSummaryBuildAction implements Action {
+    // number of invocations by downstream project
+    public final Map<String, Integer> invocations;
+    public final int total;
+    public final String digest;
+
+    public DownstreamSummaryBuildAction(Map<String, Integer> invocations,
+                                        int total, String digest) {
+        this.invocations = invocations;
+        this.total = total;
+        this.digest = digest;
+    }
+
+    /**
+     * No task list item.
+     */
+    public String getIconFileName() {
+       return null;
+    }
+
+    public String getDisplayName() {
+        return "Downstream Projects";
+    }
+
+    public String getUrlName() {
+        return "downstream_projects";
+    }
+
+    public Map<String, Integer> getInvocations() {
+        return this.invocations;
+    }
+
+    public int getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return the digest of the names of the generated jobs, equal for two
+     *         runs triggering the same downstream jobs.
+     */
+    public String getDigest() {
+        return this.digest;
+    }
+}
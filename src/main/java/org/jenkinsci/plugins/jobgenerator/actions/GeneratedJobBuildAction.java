@@ -32,12 +32,25 @@ import hudson.model.Action;
  * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
  */
 public class GeneratedJobBuildAction implements Action {
+    public enum Outcome {
+        CREATED, UPDATED, UNCHANGED,
+        // not generated again, its inputs are unchanged
+        SKIPPED;
+    }
+
     public final String jobName;
     public final boolean created;
+    // null for the builds recorded before the outcome was introduced
+    private final Outcome outcome;
 
     public GeneratedJobBuildAction(String job, boolean created) {
+        this(job, created ? Outcome.CREATED : Outcome.UPDATED);
+    }
+
+    public GeneratedJobBuildAction(String job, Outcome outcome) {
         this.jobName = job;
-        this.created = created;
+        this.created = outcome == Outcome.CREATED;
+        this.outcome = outcome;
     }
 
     /**
@@ -63,4 +76,11 @@ public class GeneratedJobBuildAction implements Action {
         return this.created;
     }
 
+    public Outcome getOutcome(){
+        if(this.outcome == null){
+            return this.created ? Outcome.CREATED : Outcome.UPDATED;
+        }
+        return this.outcome;
+    }
+
 }
@@ -0,0 +1,75 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator.actions;
+
+import java.util.Map;
+
+import hudson.model.Action;
+
+/**
+ * Summary of a plan run: number of generated jobs by change, the changes of
+ * each job being listed in an artifact of the build.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class GenerationPlanBuildAction implements Action {
+    public final Map<String, Integer> counts;
+    public final String artifact;
+
+    public GenerationPlanBuildAction(Map<String, Integer> counts,
+                                     String artifact) {
+        this.counts = counts;
+        this.artifact = artifact;
+    }
+
+    /**
+     * No task list item.
+     */
+    public String getIconFileName() {
+       return null;
+    }
+
+    public String getDisplayName() {
+        return "Generation Plan";
+    }
+
+    public String getUrlName() {
+        return "generation_plan";
+    }
+
+    /**
+     * @return the number of jobs by change.
+     */
+    public Map<String, Integer> getCounts() {
+        return this.counts;
+    }
+
+    /**
+     * @return the artifact listing the change of each job.
+     */
+    public String getArtifact() {
+        return this.artifact;
+    }
+}
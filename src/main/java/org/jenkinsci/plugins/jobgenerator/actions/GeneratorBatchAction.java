@@ -0,0 +1,223 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator.actions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import hudson.model.Action;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Queue.QueueAction;
+
+import org.jenkinsci.plugins.jobgenerator.parameters.GeneratorKeyValueParameterValue;
+
+/**
+ * Parameter sets of a batch generation and the result for each of them.
+ *
+ * The parameter sets are dropped once the jobs have been generated, only
+ * the results are kept with the build.
+ * 
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+@ExportedBean(defaultVisibility=2)
+public class GeneratorBatchAction implements QueueAction {
+    // never persisted with the build
+    private transient List<Map<String, String>> parameterSets;
+    private final List<Integer> indexes;
+    private final boolean disableJobs;
+    private final boolean processThisJobOnly;
+    private final boolean plan;
+    private final List<Item> results = new ArrayList<Item>();
+
+    /**
+     * @param indexes index of each parameter set in the request
+     */
+    public GeneratorBatchAction(List<Map<String, String>> parameterSets,
+                                List<Integer> indexes,
+                                boolean disableJobs,
+                                boolean processThisJobOnly) {
+        this(parameterSets, indexes, disableJobs, processThisJobOnly, false);
+    }
+
+    /**
+     * @param indexes index of each parameter set in the request
+     * @param plan if true the changes are reported instead of being applied
+     */
+    public GeneratorBatchAction(List<Map<String, String>> parameterSets,
+                                List<Integer> indexes,
+                                boolean disableJobs,
+                                boolean processThisJobOnly,
+                                boolean plan) {
+        this.parameterSets = parameterSets;
+        this.indexes = indexes;
+        this.disableJobs = disableJobs;
+        this.processThisJobOnly = processThisJobOnly;
+        this.plan = plan;
+    }
+
+    /**
+     * No task list item.
+     */
+    public String getIconFileName() {
+       return null;
+    }
+
+    public String getDisplayName() {
+        return "Batch Generation";
+    }
+
+    public String getUrlName() {
+        return "batch_generation";
+    }
+
+    /**
+     * Batches are never merged with another queued batch.
+     */
+    public boolean shouldSchedule(List<Action> actions) {
+        return true;
+    }
+
+    public List<Map<String, String>> getParameterSets() {
+        if(this.parameterSets == null){
+            return Collections.emptyList();
+        }
+        return this.parameterSets;
+    }
+
+    /**
+     * @return the number of parameter sets of the request, the parameter
+     *         sets themselves are not kept across restarts.
+     */
+    public int getSize() {
+        return this.indexes.size();
+    }
+
+    /**
+     * @return the index in the request of the i-th parameter set.
+     */
+    public int getIndex(int i) {
+        return this.indexes.get(i);
+    }
+
+    public boolean getDisableJobs() {
+        return this.disableJobs;
+    }
+
+    public boolean getProcessThisJobOnly() {
+        return this.processThisJobOnly;
+    }
+
+    public boolean getPlan() {
+        return this.plan;
+    }
+
+    @Exported
+    public synchronized List<Item> getResults() {
+        return Collections.unmodifiableList(new ArrayList<Item>(this.results));
+    }
+
+    public synchronized int getFailures() {
+        int n = 0;
+        for(Item i: this.results){
+            if(i.error != null){
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Records the result of a parameter set.
+     *
+     * @param status created, updated or unchanged if the job has been
+     *        generated
+     * @param error null if the job has been generated
+     */
+    public synchronized void addResult(int index, String job, String status,
+                                       String error) {
+        this.results.add(new Item(index, job, status, error));
+    }
+
+    /**
+     * Drops the parameter sets once the batch has been processed.
+     */
+    public void done() {
+        this.parameterSets = null;
+    }
+
+    public static ParametersAction toParametersAction(
+            Map<String, String> values) {
+        List<ParameterValue> l = new ArrayList<ParameterValue>();
+        for(Map.Entry<String, String> e: values.entrySet()){
+            l.add(new GeneratorKeyValueParameterValue(e.getKey(),
+                                                      e.getValue()));
+        }
+        return new ParametersAction(l);
+    }
+
+    @ExportedBean(defaultVisibility=2)
+    public static final class Item {
+        private final int index;
+        private final String job;
+        private final String status;
+        private final String error;
+
+        public Item(int index, String job, String status, String error) {
+            this.index = index;
+            this.job = job;
+            this.status = status;
+            this.error = error;
+        }
+
+        /**
+         * @return index of the parameter set in the request.
+         */
+        @Exported
+        public int getIndex() {
+            return this.index;
+        }
+
+        @Exported
+        public String getJob() {
+            return this.job;
+        }
+
+        @Exported
+        public String getStatus() {
+            return this.error == null ? this.status : "failed";
+        }
+
+        @Exported
+        public String getError() {
+            return this.error;
+        }
+    }
+}
@@ -24,9 +24,7 @@ THE SOFTWARE.
 
 package org.jenkinsci.plugins.jobgenerator.parameterizedtrigger;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
-import hudson.EnvVars;
+import hudson.AbortException;
 import hudson.Extension;
 import hudson.Util;
 import hudson.model.AbstractBuild;
@@ -38,12 +36,19 @@ import hudson.plugins.parameterizedtrigger.AbstractBuildParameters;
 import hudson.util.FormValidation;
 import hudson.util.VariableResolver;
 import org.apache.commons.lang.StringUtils;
+import org.apache.tools.ant.filters.StringInputStream;
+import org.jenkinsci.plugins.jobgenerator.GeneratorEnvironment;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.RandomAccess;
+import java.util.regex.Pattern;
 
 public class CounterGeneratorParameterFactory extends
         AbstractBuildParameterFactory {
@@ -53,6 +58,8 @@ public class CounterGeneratorParameterFactory extends
 	private final String step;
 	private final String paramExpr;
 	private final SteppingValidationEnum validationFail;
+	// paramExpr parsed on first use
+	private transient volatile CountTemplate template;
 
 	public enum SteppingValidationEnum {
 		FAIL("Fail the build step"), // previous behaviour (default)
@@ -126,35 +133,127 @@ public class CounterGeneratorParameterFactory extends
 	        AbstractBuild<?, ?> build, TaskListener listener)
 	        throws IOException, InterruptedException,
 	        AbstractBuildParameters.DontTriggerException {
-		EnvVars envVars = build.getEnvironment(listener);
+		GeneratorEnvironment env = GeneratorEnvironment.of(build, listener);
 
-		long fromNum = Long.valueOf(envVars.expand(from));
-		long toNum = Long.valueOf(envVars.expand(to));
-		long stepNum = Long.valueOf(envVars.expand(step));
+		long fromNum = Long.valueOf(env.expand(from));
+		long toNum = Long.valueOf(env.expand(to));
+		long stepNum = Long.valueOf(env.expand(step));
 
-		ArrayList<AbstractBuildParameters> params = Lists.newArrayList();
 		int upDown = Long.signum(toNum - fromNum);
 
 		if (upDown == 0) {
-			params.add(getParameterForCount(fromNum));
-		} else {
-			if (stepNum == 0) {
-				validationFail.failCheck(listener);
-			} else if (upDown * stepNum < 0) {
-				validationFail.failCheck(listener);
-			} else {
-				for (Long i = fromNum; upDown * i <= upDown * toNum; i += stepNum) {
-					params.add(getParameterForCount(i));
-				}
+			return Collections
+			        .<AbstractBuildParameters> singletonList(getTemplate()
+			                .getParameters(fromNum));
+		}
+		if (stepNum == 0 || upDown * stepNum < 0) {
+			validationFail.failCheck(listener);
+			return Collections.emptyList();
+		}
+		long count = (toNum - fromNum) / stepNum + 1;
+		if (count > Integer.MAX_VALUE) {
+			throw new AbortException(String.format(
+			        "Counting from %d to %d by %d gives too many values",
+			        fromNum, toNum, stepNum));
+		}
+		return new CountList(getTemplate(), fromNum, stepNum, (int) count);
+	}
+
+	private CountTemplate getTemplate() throws IOException {
+		CountTemplate t = template;
+		if (t == null) {
+			t = new CountTemplate(paramExpr);
+			template = t;
+		}
+		return t;
+	}
+
+	/**
+	 * Parameter expression parsed once, each count is rendered directly into
+	 * the parsed properties.
+	 */
+	private static final class CountTemplate {
+		// stands for the count while parsing the expression
+		private static final String MARK = "\u0000COUNT\u0000";
+		private static final Pattern MARK_PATTERN = Pattern.compile(Pattern
+		        .quote(MARK));
+
+		private final String[][] names;
+		private final String[][] values;
+
+		private CountTemplate(String paramExpr) throws IOException {
+			String s = Util.replaceMacro(Util.fixNull(paramExpr),
+			        new VariableResolver<String>() {
+				        public String resolve(String name) {
+					        return name.equals("COUNT") ? MARK : null;
+				        }
+			        });
+			Properties p = new Properties();
+			p.load(new StringInputStream(s));
+			names = new String[p.size()][];
+			values = new String[p.size()][];
+			int i = 0;
+			for (Map.Entry<Object, Object> entry : p.entrySet()) {
+				names[i] = MARK_PATTERN.split(entry.getKey().toString(), -1);
+				values[i] = MARK_PATTERN.split(entry.getValue().toString(), -1);
+				i++;
+			}
+		}
+
+		private PredefinedGeneratorParameters getParameters(long count) {
+			String c = Long.toString(count);
+			String[] n = new String[names.length];
+			String[] v = new String[values.length];
+			for (int i = 0; i < n.length; i++) {
+				n[i] = render(names[i], c);
+				v[i] = render(values[i], c);
 			}
+			return new PredefinedGeneratorParameters(n, v);
+		}
+
+		private static String render(String[] segments, String count) {
+			if (segments.length == 1) {
+				return segments[0];
+			}
+			StringBuilder sb = new StringBuilder(segments[0]);
+			for (int i = 1; i < segments.length; i++) {
+				sb.append(count).append(segments[i]);
+			}
+			return sb.toString();
 		}
-		return params;
 	}
 
-	private PredefinedGeneratorParameters getParameterForCount(Long i) {
-		String stringWithCount = Util.replaceMacro(paramExpr,
-		        ImmutableMap.of("COUNT", i.toString()));
-		return new PredefinedGeneratorParameters(stringWithCount);
+	/**
+	 * Parameters of each count, built when they are accessed.
+	 */
+	private static final class CountList extends
+	        AbstractList<AbstractBuildParameters> implements RandomAccess {
+		private final CountTemplate template;
+		private final long from;
+		private final long step;
+		private final int size;
+
+		private CountList(CountTemplate template, long from, long step,
+		        int size) {
+			this.template = template;
+			this.from = from;
+			this.step = step;
+			this.size = size;
+		}
+
+		@Override
+		public AbstractBuildParameters get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index
+				        + ", Size: " + size);
+			}
+			return template.getParameters(from + index * step);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
 	}
 
 	@Extension
@@ -41,8 +41,16 @@ import hudson.util.VariableResolver;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,6 +58,8 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.FileSet;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -107,6 +117,23 @@ public class FileGeneratorParameterFactory extends
 		        throws AbstractBuildParameters.DontTriggerException;
 	}
 
+	/**
+	 * Set the
+	 * org.jenkinsci.plugins.jobgenerator.parameterizedtrigger.FileGeneratorParameterFactory.remoteReadDisabled
+	 * system property to read the files one by one from the master.
+	 */
+	public static boolean REMOTE_READ = !Boolean
+	        .getBoolean(FileGeneratorParameterFactory.class.getName()
+	                + ".remoteReadDisabled");
+	/**
+	 * Number of threads reading the files on the node of the workspace, set
+	 * with the
+	 * org.jenkinsci.plugins.jobgenerator.parameterizedtrigger.FileGeneratorParameterFactory.readThreads
+	 * system property.
+	 */
+	public static int READ_THREADS = Integer.getInteger(
+	        FileGeneratorParameterFactory.class.getName() + ".readThreads", 1);
+
 	private final String filePattern;
 	private final NoFilesFoundEnum noFilesFoundAction;
 
@@ -139,6 +166,21 @@ public class FileGeneratorParameterFactory extends
 
 		try {
 			FilePath workspace = getWorkspace(build);
+			if (REMOTE_READ) {
+				List<ParsedFile> files = workspace.act(new ReadFiles(
+				        getFilePattern(), READ_THREADS));
+				if (files.isEmpty()) {
+					noFilesFoundAction.failCheck(listener);
+				}
+				for (ParsedFile f : files) {
+					Logger.getLogger(
+					        FileGeneratorParameterFactory.class.getName()).log(
+					        Level.INFO, "Triggering build with " + f.name);
+					result.add(new PredefinedGeneratorParameters(f.names,
+					        f.values));
+				}
+				return result;
+			}
 			FilePath[] files = workspace.list(getFilePattern());
 			if (files.length == 0) {
 				noFilesFoundAction.failCheck(listener);
@@ -160,6 +202,97 @@ public class FileGeneratorParameterFactory extends
 		return result;
 	}
 
+	/**
+	 * Properties of a file parsed where the file is.
+	 */
+	private static final class ParsedFile implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String name;
+		private final String[] names;
+		private final String[] values;
+
+		private ParsedFile(String name, String[] names, String[] values) {
+			this.name = name;
+			this.names = names;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * Lists the files matching the pattern and parses them, in a single call
+	 * to the node of the workspace.
+	 */
+	private static final class ReadFiles implements
+	        FileCallable<List<ParsedFile>> {
+		private static final long serialVersionUID = 1L;
+		private final String pattern;
+		private final int threads;
+
+		private ReadFiles(String pattern, int threads) {
+			this.pattern = pattern;
+			this.threads = threads;
+		}
+
+		public List<ParsedFile> invoke(File dir, VirtualChannel channel)
+		        throws IOException, InterruptedException {
+			FileSet fs = Util.createFileSet(dir, pattern);
+			DirectoryScanner ds = fs
+			        .getDirectoryScanner(new org.apache.tools.ant.Project());
+			String[] names = ds.getIncludedFiles();
+			List<ParsedFile> result = new ArrayList<ParsedFile>(names.length);
+			if (threads <= 1 || names.length <= 1) {
+				for (String n : names) {
+					result.add(parse(new File(dir, n)));
+				}
+				return result;
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+			        threads, names.length));
+			try {
+				List<Future<ParsedFile>> futures = new ArrayList<Future<ParsedFile>>(
+				        names.length);
+				for (String n : names) {
+					final File f = new File(dir, n);
+					futures.add(executor.submit(new Callable<ParsedFile>() {
+						public ParsedFile call() throws IOException {
+							return parse(f);
+						}
+					}));
+				}
+				for (Future<ParsedFile> future : futures) {
+					try {
+						result.add(future.get());
+					} catch (ExecutionException e) {
+						throw new IOException("Unable to read parameters", e
+						        .getCause());
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			return result;
+		}
+
+		private static ParsedFile parse(File f) throws IOException {
+			Properties p = new Properties();
+			InputStream is = new FileInputStream(f);
+			try {
+				p.load(is);
+			} finally {
+				is.close();
+			}
+			String[] names = new String[p.size()];
+			String[] values = new String[p.size()];
+			int i = 0;
+			for (Map.Entry<Object, Object> entry : p.entrySet()) {
+				names[i] = entry.getKey().toString();
+				values[i] = entry.getValue().toString();
+				i++;
+			}
+			return new ParsedFile(f.getName(), names, values);
+		}
+	}
+
 	private FilePath getWorkspace(AbstractBuild build) {
 		FilePath workspace = build.getWorkspace();
 		if (workspace == null) {
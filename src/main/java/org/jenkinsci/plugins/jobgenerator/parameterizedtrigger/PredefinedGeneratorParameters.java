@@ -26,6 +26,7 @@ package org.jenkinsci.plugins.jobgenerator.parameterizedtrigger;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.Action;
 import hudson.model.Descriptor;
@@ -36,44 +37,111 @@ import hudson.plugins.parameterizedtrigger.AbstractBuildParameters;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import org.apache.tools.ant.filters.StringInputStream;
+import org.jenkinsci.plugins.jobgenerator.GeneratorEnvironment;
+import org.jenkinsci.plugins.jobgenerator.GeneratorRun;
 import org.jenkinsci.plugins.jobgenerator.parameters.GeneratorKeyValueParameterValue;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 public class PredefinedGeneratorParameters extends AbstractBuildParameters {
 
 	private final String properties;
+	// properties parsed once, in the order of the text
+	private transient volatile Entries entries;
 
 	@DataBoundConstructor
 	public PredefinedGeneratorParameters(String properties) {
 		this.properties = properties;
 	}
 
+	/**
+	 * Parameters made of already parsed properties, the arrays are not
+	 * copied.
+	 */
+	PredefinedGeneratorParameters(String[] names, String[] values) {
+		this.properties = null;
+		this.entries = new Entries(names, values);
+	}
+
 	public Action getAction(AbstractBuild<?, ?> build, TaskListener listener)
 	        throws IOException, InterruptedException {
-
-		EnvVars env = getEnvironment(build, listener);
-
-		Properties p = new Properties();
-		p.load(new StringInputStream(properties));
-
-		List<ParameterValue> values = new ArrayList<ParameterValue>();
-		for (Map.Entry<Object, Object> entry : p.entrySet()) {
-			values.add(new GeneratorKeyValueParameterValue(entry.getKey()
-			        .toString(), env.expand(entry.getValue().toString())));
+		if (build instanceof GeneratorRun) {
+			return getAction(GeneratorEnvironment.of(build, listener).getVars());
 		}
+		return getAction(getEnvironment(build, listener));
+	}
 
+	/**
+	 * Returns the generator parameters expanded with the passed environment.
+	 */
+	public Action getAction(EnvVars env) throws IOException {
+		Entries e = getEntries();
+		List<ParameterValue> values = new ArrayList<ParameterValue>(
+		        e.names.length);
+		for (int i = 0; i < e.names.length; i++) {
+			values.add(new GeneratorKeyValueParameterValue(e.names[i], env
+			        .expand(e.values[i])));
+		}
 		return new ParametersAction(values);
 	}
 
+	private Entries getEntries() throws IOException {
+		Entries e = entries;
+		if (e == null) {
+			// parameters loaded from a configuration are parsed on first use
+			e = Entries.parse(Util.fixNull(properties));
+			entries = e;
+		}
+		return e;
+	}
+
 	public String getProperties() {
+		Entries e = entries;
+		if (properties == null && e != null) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < e.names.length; i++) {
+				sb.append(e.names[i]).append('=').append(e.values[i])
+				        .append('\n');
+			}
+			return sb.toString();
+		}
 		return properties;
 	}
 
+	/**
+	 * Immutable names and values of the properties.
+	 */
+	private static final class Entries {
+		private final String[] names;
+		private final String[] values;
+
+		private Entries(String[] names, String[] values) {
+			this.names = names;
+			this.values = values;
+		}
+
+		private static Entries parse(String s) throws IOException {
+			final Map<String, String> m = new LinkedHashMap<String, String>();
+			// the properties syntax is left to Properties, only the order
+			// of the entries is kept
+			Properties p = new Properties() {
+				@Override
+				public synchronized Object put(Object key, Object value) {
+					m.put((String) key, (String) value);
+					return super.put(key, value);
+				}
+			};
+			p.load(new StringInputStream(s));
+			return new Entries(m.keySet().toArray(new String[m.size()]), m
+			        .values().toArray(new String[m.size()]));
+		}
+	}
+
 	@Extension
 	public static class DescriptorImpl extends
 	        Descriptor<AbstractBuildParameters> {
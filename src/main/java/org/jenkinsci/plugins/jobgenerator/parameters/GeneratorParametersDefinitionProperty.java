@@ -24,20 +24,32 @@ THE SOFTWARE.
 
 package org.jenkinsci.plugins.jobgenerator.parameters;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.AbstractList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
 import jenkins.model.Jenkins;
 import jenkins.util.TimeDuration;
 
 import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 
+import org.apache.commons.io.IOUtils;
+
 import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.export.ExportedBean;
 import org.kohsuke.stapler.export.Flavor;
@@ -47,7 +59,9 @@ import org.kohsuke.stapler.StaplerResponse;
 
 import hudson.model.*;
 
+import org.jenkinsci.plugins.jobgenerator.GeneratorRun;
 import org.jenkinsci.plugins.jobgenerator.JobGenerator;
+import org.jenkinsci.plugins.jobgenerator.actions.GeneratorBatchAction;
 
 /**
  * Wrap Jenkins ParametersDefinitionProperty to be able to display its own
@@ -63,49 +77,107 @@ public class GeneratorParametersDefinitionProperty
     private static final Logger LOGGER = Logger.getLogger(
                          GeneratorParametersDefinitionProperty.class.getName());
 
-    private transient List<ParameterDefinition> generatorParameterDefinitions;
-    private transient List<ParameterDefinition> globalParameterDefinitions;
-    private transient List<ParameterDefinition> localParameterDefinitions;
+    /**
+     * Maximum number of parameter sets generated by a single build of a
+     * batch generation.
+     */
+    public static int BATCH_SIZE = Integer.getInteger(
+            GeneratorParametersDefinitionProperty.class.getName() +
+            ".batchSize", 500);
+
+    private final transient List<ParameterDefinition>
+                                                 generatorParameterDefinitions;
+    private final transient List<ParameterDefinition>
+                                                    globalParameterDefinitions;
+    private final transient List<ParameterDefinition>
+                                                     localParameterDefinitions;
+    private final transient Map<String, ParameterDefinition> definitionsByName;
+    // wrapped properties, the view is valid as long as they are the same
+    private final transient ParametersDefinitionProperty property;
+    private final transient ParametersDefinitionProperty topmost;
 
-    public GeneratorParametersDefinitionProperty(
+    private GeneratorParametersDefinitionProperty(
+            JobGenerator project,
             ParametersDefinitionProperty property,
-            JobGenerator project) {
+            ParametersDefinitionProperty topmost,
+            List<ParameterDefinition> definitions,
+            List<ParameterDefinition> global,
+            List<ParameterDefinition> local) {
         this.owner = project;
+        this.property = property;
+        this.topmost = topmost;
         this.generatorParameterDefinitions =
-                                          new ArrayList<ParameterDefinition>();
-        List<ParameterDefinition> lpd = property.getParameterDefinitions();
-        for(ParameterDefinition pd: lpd){
-            if (GeneratorKeyValueParameterDefinition.class.isInstance(pd) ||
-                GeneratorChoiceParameterDefinition.class.isInstance(pd)){
-                this.generatorParameterDefinitions.add(pd);
+                                     Collections.unmodifiableList(definitions);
+        this.globalParameterDefinitions = Collections.unmodifiableList(global);
+        this.localParameterDefinitions = Collections.unmodifiableList(local);
+        this.definitionsByName = new HashMap<String, ParameterDefinition>();
+        for(ParameterDefinition pd: definitions){
+            // the first definition of a parameter takes precedence
+            if(!this.definitionsByName.containsKey(pd.getName())){
+                this.definitionsByName.put(pd.getName(), pd);
             }
         }
-        this.globalParameterDefinitions = new ArrayList<ParameterDefinition>();
-        this.localParameterDefinitions = new ArrayList<ParameterDefinition>();
     }
 
-    // required since setOwner is protected.
-    public void setOwner2(JobGenerator owner){
-        this.owner = owner;
+    /**
+     * Creates the parameter definitions view of a job generator.
+     *
+     * @param property parameter definitions of the job generator, may be
+     *        null
+     * @param topmost parameter definitions of the topmost upstream project,
+     *        may be null
+     * @return null if both definitions are null.
+     */
+    public static GeneratorParametersDefinitionProperty create(
+            JobGenerator project,
+            ParametersDefinitionProperty property,
+            ParametersDefinitionProperty topmost) {
+        List<ParameterDefinition> definitions =
+                                          new ArrayList<ParameterDefinition>();
+        List<ParameterDefinition> global = new ArrayList<ParameterDefinition>();
+        List<ParameterDefinition> local = new ArrayList<ParameterDefinition>();
+        if(property != null){
+            // merge with top most project parameters
+            if(topmost != null){
+                definitions.addAll(topmost.getParameterDefinitions());
+                addParameters(topmost.getParameterDefinitions(), global);
+                addParameters(property.getParameterDefinitions(), local);
+            }
+            else {
+                addParameters(property.getParameterDefinitions(), global);
+            }
+            addParameters(property.getParameterDefinitions(), definitions);
+        }
+        else if(topmost != null){
+            addParameters(topmost.getParameterDefinitions(), definitions);
+            addParameters(topmost.getParameterDefinitions(), global);
+        }
+        else {
+            return null;
+        }
+        return new GeneratorParametersDefinitionProperty(
+                            project, property, topmost, definitions, global,
+                            local);
     }
 
-    public void addGlobalParameters(List<ParameterDefinition> params){
-        this.addParameters(params, this.globalParameterDefinitions);
+    /**
+     * @return true if this view wraps the passed parameter definitions.
+     */
+    public boolean isViewOf(ParametersDefinitionProperty property,
+                            ParametersDefinitionProperty topmost) {
+        return this.property == property && this.topmost == topmost;
     }
+
     public List<ParameterDefinition> getGlobalParameters(){
         return this.globalParameterDefinitions;
     }
 
-    public void addLocalParameters(List<ParameterDefinition> params){
-        this.addParameters(params, this.localParameterDefinitions);
-    }
     public List<ParameterDefinition> getLocalParameters(){
         return this.localParameterDefinitions;
     }
 
-    private void addParameters(List<ParameterDefinition> in,
-                              List<ParameterDefinition> out){
-        out.clear();
+    private static void addParameters(List<ParameterDefinition> in,
+                                      List<ParameterDefinition> out){
         for(ParameterDefinition pd: in){
             if(GeneratorKeyValueParameterDefinition.class.isInstance(pd) ||
                GeneratorChoiceParameterDefinition.class.isInstance(pd)) {
@@ -123,15 +195,19 @@ public class GeneratorParametersDefinitionProperty
             JSONObject json = req.getSubmittedForm();
 //            System.out.println(json);
             JSONArray a = JSONArray.fromObject(json.get("parameter"));
+            List<ParameterDefinition> added =
+                                          new ArrayList<ParameterDefinition>();
+            Set<String> names = new HashSet<String>();
             for (Object o : a) {
                 JSONObject jo = (JSONObject) o;
                 String name = jo.getString("name");
-                if(this.getParameterDefinition(name) == null){
+                if(this.getParameterDefinition(name) == null &&
+                   names.add(name)){
                     String value = jo.getString("value");
                     GeneratorKeyValueParameterDefinition pdef =
                         new GeneratorKeyValueParameterDefinition(name,
                                                                  value, "");
-                    this.generatorParameterDefinitions.add(pdef);
+                    added.add(pdef);
                 }
             }
             JobGenerator p = (JobGenerator)this.getOwner();
@@ -144,7 +220,30 @@ public class GeneratorParametersDefinitionProperty
             p.setDisableJobs(!o.isNullObject());
             o = json.getJSONObject("processthisjob");
             p.setProcessThisJobOnly(!o.isNullObject());
+            o = json.getJSONObject("incremental");
+            p.setIncremental(!o.isNullObject());
+            p.setDeleteVanished(!o.isNullObject() &&
+                                o.optBoolean("deleteVanished"));
+            o = json.getJSONObject("plan");
+            p.setPlan(!o.isNullObject());
+            if(!added.isEmpty()){
+                // the shared view is left untouched, submitted parameters
+                // are only defined for this request
+                List<ParameterDefinition> l =
+                        new ArrayList<ParameterDefinition>(
+                                           this.generatorParameterDefinitions);
+                l.addAll(added);
+                new GeneratorParametersDefinitionProperty(p, this.property,
+                        this.topmost, l, this.globalParameterDefinitions,
+                        this.localParameterDefinitions).scheduleBuild(req, rsp);
+                return;
+            }
         }
+        this.scheduleBuild(req, rsp);
+    }
+
+    private void scheduleBuild(StaplerRequest req, StaplerResponse rsp)
+            throws IOException, ServletException {
         super._doBuild(req, rsp, new TimeDuration(0));
     }
 
@@ -186,6 +285,236 @@ public class GeneratorParametersDefinitionProperty
         }
     }
 
+    /**
+     * Generates one job per parameter set posted as a JSON array or as
+     * newline delimited JSON objects. The parameter sets are split into
+     * builds of at most {@link #BATCH_SIZE} sets and the response lists the
+     * status of each of them, with <code>wait=true</code> the response is
+     * sent once all the builds are completed. With <code>plan=true</code>
+     * the builds only report what they would change. Nothing is scheduled
+     * if a parameter set refers to an unknown parameter.
+     */
+    public void generateBatch(StaplerRequest req, StaplerResponse rsp)
+            throws IOException, ServletException {
+        if(!req.getMethod().equals("POST")) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        JobGenerator p = (JobGenerator)this.getOwner();
+        p.checkPermission(AbstractProject.BUILD);
+        String causeText = req.getParameter("cause");
+        Batch batch = new Batch(p,
+                Boolean.parseBoolean(req.getParameter("disablejobs")),
+                Boolean.parseBoolean(req.getParameter("processthisjob")),
+                Boolean.parseBoolean(req.getParameter("plan")),
+                new Cause.RemoteCause(req.getRemoteAddr(), causeText));
+        BufferedReader r = req.getReader();
+        int c;
+        do {
+            r.mark(1);
+            c = r.read();
+        } while(c != -1 && Character.isWhitespace(c));
+        try {
+            if(c == '['){
+                r.reset();
+                for(Object o: JSONArray.fromObject(IOUtils.toString(r))){
+                    batch.add(o);
+                }
+            }
+            else if(c != -1){
+                // one parameter set per line
+                r.reset();
+                String line;
+                while((line = r.readLine()) != null){
+                    line = line.trim();
+                    if(line.length() == 0){
+                        continue;
+                    }
+                    try {
+                        batch.add(JSONObject.fromObject(line));
+                    } catch (JSONException e) {
+                        batch.reject(e.getMessage());
+                    }
+                }
+            }
+        } catch (JSONException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            // a typo must not generate jobs with default values
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        batch.schedule();
+        if(Boolean.parseBoolean(req.getParameter("wait"))){
+            try {
+                batch.waitForCompletion();
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for " +
+                                      "the batch generation", e);
+            }
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        batch.toJSON().write(rsp.getWriter());
+    }
+
+    /**
+     * Parameter sets of a batch request, scheduled by chunks once they have
+     * all been read.
+     */
+    private final class Batch {
+        private final JobGenerator project;
+        private final boolean disableJobs;
+        private final boolean processThisJobOnly;
+        private final boolean plan;
+        private final Cause cause;
+        private final List<Map<String, String>> pending =
+                                       new ArrayList<Map<String, String>>();
+        private final List<Integer> indexes = new ArrayList<Integer>();
+        private final JSONArray items = new JSONArray();
+        private final List<Queue.WaitingItem> builds =
+                                          new ArrayList<Queue.WaitingItem>();
+
+        private Batch(JobGenerator project, boolean disableJobs,
+                      boolean processThisJobOnly, boolean plan,
+                      Cause cause) {
+            this.project = project;
+            this.disableJobs = disableJobs;
+            this.processThisJobOnly = processThisJobOnly;
+            this.plan = plan;
+            this.cause = cause;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the parameter set refers to an
+         *         unknown parameter
+         */
+        private void add(Object o) {
+            if(!(o instanceof JSONObject)){
+                this.reject("A parameter set must be a JSON object");
+                return;
+            }
+            JSONObject jo = (JSONObject) o;
+            for(Object k: jo.keySet()){
+                if(getParameterDefinition((String) k) == null){
+                    throw new IllegalArgumentException(String.format(
+                            "Parameter set #%d: unknown parameter %s",
+                            this.items.size(), k));
+                }
+            }
+            Map<String, String> values = new LinkedHashMap<String, String>();
+            try {
+                for(ParameterDefinition pd: generatorParameterDefinitions){
+                    ParameterValue v;
+                    if(jo.has(pd.getName())){
+                        v = ((SimpleParameterDefinition) pd).createValue(
+                                                 jo.getString(pd.getName()));
+                    }
+                    else{
+                        v = pd.getDefaultParameterValue();
+                    }
+                    if(v instanceof GeneratorKeyValueParameterValue){
+                        values.put(v.getName(),
+                                   ((GeneratorKeyValueParameterValue) v).value);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                this.reject(e.getMessage());
+                return;
+            }
+            JSONObject item = this.newItem("queued");
+            item.put("job", GeneratorRun.getExpandedJobName(this.project,
+                                                            values));
+            this.indexes.add(this.items.size());
+            this.items.add(item);
+            this.pending.add(values);
+        }
+
+        private void reject(String error) {
+            JSONObject item = this.newItem("rejected");
+            item.put("error", error);
+            this.items.add(item);
+        }
+
+        private JSONObject newItem(String status) {
+            JSONObject item = new JSONObject();
+            item.put("index", this.items.size());
+            item.put("status", status);
+            return item;
+        }
+
+        /**
+         * Schedules one build per chunk of at most {@link #BATCH_SIZE}
+         * pending parameter sets.
+         */
+        private void schedule() {
+            int size = Math.max(1, BATCH_SIZE);
+            for(int from = 0; from < this.pending.size(); from += size){
+                int to = Math.min(from + size, this.pending.size());
+                this.schedule(this.pending.subList(from, to),
+                              this.indexes.subList(from, to));
+            }
+            this.indexes.clear();
+            this.pending.clear();
+        }
+
+        private void schedule(List<Map<String, String>> sets,
+                              List<Integer> indexes) {
+            GeneratorBatchAction a = new GeneratorBatchAction(
+                    new ArrayList<Map<String, String>>(sets),
+                    new ArrayList<Integer>(indexes),
+                    this.disableJobs, this.processThisJobOnly, this.plan);
+            Queue.WaitingItem wi = Jenkins.getInstance().getQueue().schedule(
+                    this.project, 0, a, new CauseAction(this.cause));
+            if(wi != null){
+                for(int i: indexes){
+                    this.items.getJSONObject(i).put("queueId", wi.id);
+                }
+                this.builds.add(wi);
+            }
+            else{
+                for(int i: indexes){
+                    JSONObject item = this.items.getJSONObject(i);
+                    item.put("status", "rejected");
+                    item.put("error", "Unable to schedule the generation");
+                }
+            }
+        }
+
+        /**
+         * Updates the status of the parameter sets with the results of the
+         * completed builds.
+         */
+        private void waitForCompletion() throws InterruptedException {
+            for(Queue.WaitingItem wi: this.builds){
+                GeneratorBatchAction a = null;
+                try {
+                    Run r = (Run) wi.getFuture().get();
+                    a = r.getAction(GeneratorBatchAction.class);
+                } catch (ExecutionException e) {
+                    LOGGER.warning("Batch generation failed: " + e);
+                }
+                if(a == null){
+                    continue;
+                }
+                for(GeneratorBatchAction.Item i: a.getResults()){
+                    JSONObject item = this.items.getJSONObject(i.getIndex());
+                    item.put("status", i.getStatus());
+                    if(i.getError() != null){
+                        item.put("error", i.getError());
+                    }
+                }
+            }
+        }
+
+        private JSONObject toJSON() {
+            JSONObject o = new JSONObject();
+            o.put("builds", this.builds.size());
+            o.put("items", this.items);
+            return o;
+        }
+    }
+
     @Exported
     @Override
     public List<ParameterDefinition> getParameterDefinitions() {
@@ -207,9 +536,6 @@ public class GeneratorParametersDefinitionProperty
 
     @Override
     public ParameterDefinition getParameterDefinition(String name) {
-        for (ParameterDefinition pd : this.generatorParameterDefinitions)
-            if (pd.getName().equals(name))
-                return pd;
-        return null;
+        return this.definitionsByName.get(name);
     }
 }
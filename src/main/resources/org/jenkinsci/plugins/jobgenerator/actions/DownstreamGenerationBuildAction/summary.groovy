@@ -0,0 +1,57 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import lib.LayoutTagLib
+
+l=namespace(LayoutTagLib)
+t=namespace("/lib/hudson")
+st=namespace("jelly:stapler")
+f=namespace("lib/form")
+
+t.summary(icon:"folder.png") {
+    raw("Generated Job(s) by downstream Job Generators:")
+    ul(class:"jobList") {
+        my.getJobs().each { af ->
+            li() {
+                a(href:"${rootURL}/job/${af}/",
+                                 class:"model-link tl-tr") { raw(af) }
+            }
+        }
+    }
+    if(!my.getScheduled().isEmpty()) {
+        raw("Scheduled Job Generator(s):")
+        ul(class:"jobList") {
+            my.getScheduled().each { af ->
+                li() {
+                    raw(af)
+                }
+            }
+        }
+    }
+    if(my.getFailures() > 0) {
+        raw("${my.getFailures()} generation(s) failed, see the console output.")
+    }
+}
@@ -32,9 +32,15 @@ st=namespace("jelly:stapler")
 f=namespace("lib/form")
 
 t.summary(icon:"folder.png") {
-    if(my?.created) {
+    if(my?.outcome?.name() == "CREATED") {
         raw("Created Job:")
     }
+    else if(my?.outcome?.name() == "UNCHANGED") {
+        raw("Unchanged Job:")
+    }
+    else if(my?.outcome?.name() == "SKIPPED") {
+        raw("Skipped Job (unchanged inputs):")
+    }
     else {
         raw("Updated Job:")
     }
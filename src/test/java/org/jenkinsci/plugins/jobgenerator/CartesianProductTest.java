@@ -0,0 +1,146 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import hudson.AbortException;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.junit.Test;
+
+/**
+ * Checks the order and the size of parameter combinations.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class CartesianProductTest {
+
+    @Test
+    public void firstFactorVariesTheFastest() throws Exception {
+        List<List<String>> factors = new ArrayList<List<String>>();
+        factors.add(Arrays.asList("a1", "a2"));
+        factors.add(Arrays.asList("b1", "b2", "b3"));
+        CartesianProduct<String> p = CartesianProduct.create(
+                Arrays.asList("p"), factors, 0);
+        assertEquals(6, p.size());
+        List<List<String>> expected = new ArrayList<List<String>>();
+        for(String b: factors.get(1)){
+            for(String a: factors.get(0)){
+                expected.add(Arrays.asList("p", a, b));
+            }
+        }
+        assertEquals(expected, new ArrayList<List<String>>(p));
+    }
+
+    @Test
+    public void nullElementsAndEmptyFactorsAreLeftOut() throws Exception {
+        List<List<String>> factors = new ArrayList<List<String>>();
+        factors.add(Arrays.asList("a1", null));
+        factors.add(Collections.<String>emptyList());
+        factors.add(Arrays.asList("c1"));
+        CartesianProduct<String> p = CartesianProduct.create(
+                Collections.<String>emptyList(), factors, 0);
+        assertEquals(2, p.getFactors().size());
+        assertEquals(Arrays.asList("a1", "c1"), p.get(0));
+        assertEquals(Arrays.asList("c1"), p.get(1));
+    }
+
+    @Test
+    public void noFactorIsThePrefixAlone() throws Exception {
+        CartesianProduct<String> p = CartesianProduct.create(
+                Arrays.asList("p"), new ArrayList<List<String>>(), 0);
+        assertEquals(1, p.size());
+        assertEquals(Arrays.asList("p"), p.get(0));
+    }
+
+    @Test
+    public void lazyFactorsAreNotCopied() throws Exception {
+        List<List<Integer>> factors = new ArrayList<List<Integer>>();
+        factors.add(new Range(1000000));
+        factors.add(new Range(3));
+        CartesianProduct<Integer> p = CartesianProduct.create(
+                Collections.<Integer>emptyList(), factors, 0);
+        assertEquals(3000000, p.size());
+        assertEquals(Arrays.asList(999999, 2), p.get(p.size() - 1));
+        assertEquals(Arrays.asList(1, 1), p.get(1000001));
+    }
+
+    @Test
+    public void outOfBounds() throws Exception {
+        CartesianProduct<String> p = CartesianProduct.create(
+                Collections.<String>emptyList(),
+                Collections.singletonList(Arrays.asList("a")), 0);
+        try {
+            p.get(1);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    @Test(expected = AbortException.class)
+    public void limit() throws Exception {
+        List<List<Integer>> factors = new ArrayList<List<Integer>>();
+        factors.add(new Range(10));
+        factors.add(new Range(11));
+        CartesianProduct.create(Collections.<Integer>emptyList(), factors,
+                                100);
+    }
+
+    @Test(expected = AbortException.class)
+    public void overflow() throws Exception {
+        List<List<Integer>> factors = new ArrayList<List<Integer>>();
+        factors.add(new Range(100000));
+        factors.add(new Range(100000));
+        CartesianProduct.create(Collections.<Integer>emptyList(), factors, 0);
+    }
+
+    // integers from 0 to size - 1, never materialized
+    private static final class Range extends AbstractList<Integer>
+                                     implements RandomAccess {
+        private final int size;
+
+        private Range(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Checks that compiled templates render like the former recursive
+ * expansion of GeneratorRun.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class CompiledTemplateTest {
+
+    @Test
+    public void normal() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("A", "alpha");
+        check("job-${A}-${A}", values, "job-alpha-alpha");
+    }
+
+    @Test
+    public void specialChars() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("B", "b/c:d*e");
+        check("${B*} and ${B}", values, "b_c_d_e and b/c:d*e");
+    }
+
+    @Test
+    public void regExp() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("C", "release-1.2");
+        check("v${C/.*-/}", values, "v1.2");
+    }
+
+    @Test
+    public void regExpWithBraces() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("N", "xaay");
+        check("${N/a{2}/b}", values, "xby");
+        check("<${N/a{1,2}/b}>", values, "<xby>");
+    }
+
+    @Test
+    public void nestedValue() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("A", "pre-${B}");
+        values.put("B", "b/c");
+        check("${A}", values, "pre-b/c");
+        check("${A*}", values, "pre-b/c");
+    }
+
+    @Test
+    public void nestedName() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("X_1", "one");
+        values.put("Y", "1");
+        check("${X_${Y}}", values, "one");
+        check("${X_${Y}/o/0}", values, "0ne");
+    }
+
+    @Test
+    public void mixed() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        values.put("A", "alpha");
+        values.put("B", "b:c");
+        values.put("C", "release-1.2");
+        check("<name>${A}_${B*}</name>\n<v>${C/.*-/}</v> ${UNKNOWN} $A",
+              values, "<name>alpha_b_c</name>\n<v>1.2</v> ${UNKNOWN} $A");
+    }
+
+    private static void check(String s, Map<String, String> values,
+                              String expected) {
+        assertEquals(expected, oldExpand(s, values));
+        assertEquals(expected, CompiledTemplate.compile(s).render(values));
+    }
+
+    // former GeneratorRun.expand
+    private static String oldExpand(String s, Map<String, String> params) {
+        String name = null;
+        int type = 0;
+        for (String n : params.keySet()) {
+            if (s.contains("${" + n + "}")) {
+                name = n;
+                break;
+            }
+            if (s.contains("${" + n + "*}")) {
+                name = n;
+                type = 1;
+                break;
+            }
+            Pattern pattern = Pattern.compile(
+                    ".*?\\$\\{" + n + "/(.*?)/(.*?)\\}.*");
+            if (pattern.matcher(s).find()) {
+                name = n;
+                type = 2;
+                break;
+            }
+        }
+        if (name == null) {
+            return s;
+        }
+        String v = params.get(name);
+        if (type == 0) {
+            s = s.replace("${" + name + "}", v);
+        }
+        else if (type == 1) {
+            s = s.replace("${" + name + "*}",
+                          CompiledTemplate.replaceSpecialChars(v));
+        }
+        else {
+            Matcher regexps = Pattern.compile(
+                    ".*?\\$\\{" + name + "/(.+?)/(.*?)\\}.*").matcher(s);
+            Matcher toReplace = Pattern.compile(
+                    ".*?(\\$\\{" + name + "/.*?/.*?\\}).*").matcher(s);
+            if (regexps.find() && toReplace.find()) {
+                Matcher m = Pattern.compile(regexps.group(1)).matcher(v);
+                if (m.find()) {
+                    v = m.replaceAll(regexps.group(2));
+                }
+                s = s.replace(toReplace.group(1), v);
+            }
+        }
+        // replace nested variables
+        return oldExpand(s, params);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Checks that the generated jobs index is read back as it was written.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class GeneratedJobsIndexTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void roundTrip() throws Exception {
+        JobGenerator gen = j.jenkins.createProject(JobGenerator.class, "gen");
+        GeneratedJobsIndex index = GeneratedJobsIndex.load(gen);
+        assertFalse(index.isIndexed());
+        index.record("a", values("NAME", "a"), null);
+        index.record("b", values("NAME", "b"), null);
+        index.record("c", values("NAME", "c", "OTHER", "&<>"), "a");
+        // generating a job again makes it the most recent one
+        index.record("a", values("NAME", "a2"), null);
+        index.remove("b");
+        index.save();
+
+        GeneratedJobsIndex loaded = GeneratedJobsIndex.load(gen);
+        assertTrue(loaded.isIndexed());
+        assertEquals(Arrays.asList("a", "c"), loaded.getJobs());
+        assertEquals(values("NAME", "a2"), loaded.get("a"));
+        assertEquals(values("NAME", "c", "OTHER", "&<>"), loaded.get("c"));
+        assertEquals(Arrays.asList("NAME", "OTHER"),
+                     Arrays.asList(loaded.get("c").keySet().toArray()));
+        assertNull(loaded.get("b"));
+        assertEquals(Collections.singletonList("c"), loaded.getJobs("a"));
+        assertEquals(Collections.emptyList(), loaded.getJobs("c"));
+    }
+
+    @Test
+    public void emptyIndexIsIndexedOnceSaved() throws Exception {
+        JobGenerator gen = j.jenkins.createProject(JobGenerator.class, "gen");
+        GeneratedJobsIndex index = GeneratedJobsIndex.load(gen);
+        index.record("a", values("NAME", "a"), null);
+        index.remove("a");
+        index.save();
+        GeneratedJobsIndex loaded = GeneratedJobsIndex.load(gen);
+        assertTrue(loaded.isIndexed());
+        assertTrue(loaded.getJobs().isEmpty());
+    }
+
+    private static Map<String, String> values(String... kv) {
+        Map<String, String> m = new LinkedHashMap<String, String>();
+        for(int i = 0; i < kv.length; i += 2){
+            m.put(kv[i], kv[i + 1]);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.ParametersDefinitionProperty;
+
+import java.net.URL;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.jobgenerator.parameters.GeneratorKeyValueParameterDefinition;
+import org.jenkinsci.plugins.jobgenerator.parameters.GeneratorParametersDefinitionProperty;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequestSettings;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * Checks how the parameter sets of a batch generation request are read.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class GeneratorBatchActionTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Before
+    public void setUp() throws Exception {
+        JobGenerator gen = j.jenkins.createProject(JobGenerator.class, "gen");
+        gen.setGeneratedJobName("gen-${NAME}");
+        gen.addProperty(new ParametersDefinitionProperty(
+                new GeneratorKeyValueParameterDefinition("NAME", "", "")));
+    }
+
+    @Test
+    public void jsonArray() throws Exception {
+        JSONObject o = this.post("?wait=true",
+                                 "[{\"NAME\": \"a\"}, 1, {\"NAME\": \"b\"}]");
+        assertEquals(1, o.getInt("builds"));
+        JSONArray items = o.getJSONArray("items");
+        assertEquals(3, items.size());
+        assertItem(items.getJSONObject(0), 0, "created", "gen-a");
+        assertEquals("rejected", items.getJSONObject(1).getString("status"));
+        assertItem(items.getJSONObject(2), 2, "created", "gen-b");
+        assertNotNull(j.jenkins.getItem("gen-a"));
+        assertNotNull(j.jenkins.getItem("gen-b"));
+    }
+
+    @Test
+    public void oneParameterSetPerLine() throws Exception {
+        JSONObject o = this.post("?wait=true",
+                                 "{\"NAME\": \"a\"}\n\nnot json\n" +
+                                 "  {\"NAME\": \"b\"}  \n");
+        JSONArray items = o.getJSONArray("items");
+        assertEquals(3, items.size());
+        assertItem(items.getJSONObject(0), 0, "created", "gen-a");
+        JSONObject rejected = items.getJSONObject(1);
+        assertEquals(1, rejected.getInt("index"));
+        assertEquals("rejected", rejected.getString("status"));
+        assertTrue(rejected.has("error"));
+        assertItem(items.getJSONObject(2), 2, "created", "gen-b");
+    }
+
+    @Test
+    public void chunks() throws Exception {
+        int size = GeneratorParametersDefinitionProperty.BATCH_SIZE;
+        try {
+            GeneratorParametersDefinitionProperty.BATCH_SIZE = 2;
+            JSONObject o = this.post("?wait=true", "[{\"NAME\": \"a\"}, " +
+                                     "{\"NAME\": \"b\"}, {\"NAME\": \"c\"}]");
+            assertEquals(2, o.getInt("builds"));
+            JSONArray items = o.getJSONArray("items");
+            assertItem(items.getJSONObject(0), 0, "created", "gen-a");
+            assertItem(items.getJSONObject(1), 1, "created", "gen-b");
+            assertItem(items.getJSONObject(2), 2, "created", "gen-c");
+            assertEquals(items.getJSONObject(0).get("queueId"),
+                         items.getJSONObject(1).get("queueId"));
+        } finally {
+            GeneratorParametersDefinitionProperty.BATCH_SIZE = size;
+        }
+    }
+
+    @Test
+    public void unknownParameter() throws Exception {
+        WebResponse r = this.request("",
+                                    "[{\"NAME\": \"a\"}, {\"NAMME\": \"b\"}]");
+        assertEquals(400, r.getStatusCode());
+        assertTrue(r.getContentAsString().contains(
+                               "Parameter set #1: unknown parameter NAMME"));
+        // nothing is scheduled when a parameter set is invalid
+        assertTrue(j.jenkins.getQueue().isEmpty());
+        assertNull(j.jenkins.getItem("gen-a"));
+    }
+
+    @Test
+    public void malformedArray() throws Exception {
+        WebResponse r = this.request("", "[{\"NAME\": \"a\"");
+        assertEquals(400, r.getStatusCode());
+        assertTrue(j.jenkins.getQueue().isEmpty());
+    }
+
+    @Test
+    public void emptyRequest() throws Exception {
+        JSONObject o = this.post("", " \n ");
+        assertEquals(0, o.getInt("builds"));
+        assertTrue(o.getJSONArray("items").isEmpty());
+    }
+
+    @Test
+    public void postOnly() throws Exception {
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        WebResponse r = wc.getPage(new URL(j.getURL(),
+                         "job/gen/generateBatch")).getWebResponse();
+        assertEquals(405, r.getStatusCode());
+    }
+
+    private static void assertItem(JSONObject item, int index, String status,
+                                   String job) {
+        assertEquals(index, item.getInt("index"));
+        assertEquals(status, item.getString("status"));
+        assertEquals(job, item.getString("job"));
+    }
+
+    private JSONObject post(String query, String body) throws Exception {
+        WebResponse r = this.request(query, body);
+        assertEquals(r.getContentAsString(), 200, r.getStatusCode());
+        return JSONObject.fromObject(r.getContentAsString());
+    }
+
+    private WebResponse request(String query, String body) throws Exception {
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.setThrowExceptionOnFailingStatusCode(false);
+        WebRequestSettings req = new WebRequestSettings(new URL(j.getURL(),
+                "job/gen/generateBatch" + query), HttpMethod.POST);
+        req.setAdditionalHeader("Content-Type", "application/json");
+        req.setRequestBody(body);
+        return wc.getPage(req).getWebResponse();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+The MIT License
+
+Copyright (c) 2012-2013, Sylvain Benner.
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+ */
+
+package org.jenkinsci.plugins.jobgenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import hudson.model.AbstractProject;
+import hudson.model.Cause;
+import hudson.model.ParametersAction;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.tasks.Shell;
+import hudson.util.ByteBuffer;
+
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.jobgenerator.parameters.GeneratorKeyValueParameterDefinition;
+import org.jenkinsci.plugins.jobgenerator.parameters.GeneratorKeyValueParameterValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Checks that the streaming writer generates the configuration the
+ * document does.
+ *
+ * @author <a href="mailto:sylvain.benner@gmail.com">Sylvain Benner</a>
+ */
+public class StreamingConfigWriterTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void sameConfigurationAsTheDocument() throws Exception {
+        JobGenerator gen = j.jenkins.createProject(JobGenerator.class, "gen");
+        gen.setGeneratedJobName("gen-${NAME*}");
+        gen.setGeneratedDisplayJobName("Generated ${NAME}");
+        gen.setDescription("Generated for ${NAME} & <${NAME*}>");
+        gen.getBuildersList().add(new Shell("echo ${NAME/a/x}\necho ${N}"));
+        gen.addProperty(new ParametersDefinitionProperty(
+                new GeneratorKeyValueParameterDefinition("NAME", "a/b", "")));
+        boolean enabled = StreamingConfigWriter.ENABLED;
+        try {
+            StreamingConfigWriter.ENABLED = true;
+            byte[] streamed = this.generate(gen);
+            StreamingConfigWriter.ENABLED = false;
+            byte[] document = this.generate(gen);
+            assertEquals(digest(document), digest(streamed));
+        } finally {
+            StreamingConfigWriter.ENABLED = enabled;
+        }
+    }
+
+    /**
+     * @return the configuration of the generated job, which is deleted.
+     */
+    private byte[] generate(JobGenerator gen) throws Exception {
+        j.assertBuildStatusSuccess(gen.scheduleBuild2(0,
+                new Cause.UserIdCause(), new ParametersAction(
+                        new GeneratorKeyValueParameterValue("NAME", "a/b"))));
+        AbstractProject p = (AbstractProject) j.jenkins.getItem("gen-a_b");
+        assertNotNull(p);
+        assertEquals("Generated for a/b & <a_b>", p.getDescription());
+        assertEquals("Generated a/b", p.getDisplayName());
+        byte[] config = FileUtils.readFileToByteArray(
+                                              p.getConfigFile().getFile());
+        p.delete();
+        return config;
+    }
+
+    private static String digest(byte[] config) throws Exception {
+        ByteBuffer b = new ByteBuffer();
+        b.write(config);
+        return GeneratedJobDigest.compute(b);
+    }
+}